@@ -0,0 +1,905 @@
+/*
+ * ColumnarResult.java
+ *
+ * Copyright (c) 2001, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This package is based on HypersonicSQL, originally developed by Thomas Mueller.
+ *
+ */
+package org.hsqldb;
+
+import java.util.*;
+import java.sql.*;
+
+/**
+ * Column-wise form of a Result. <p>
+ *
+ * TINYINT, SMALLINT and INTEGER columns are held in int arrays, BIGINT in
+ * long arrays and FLOAT and DOUBLE in double arrays. CHAR and VARCHAR
+ * columns hold an int code per row into a dictionary of the distinct
+ * strings of the column. Columns of all other types are held as Objects.
+ * A null is marked in a bitmap per column. <p>
+ *
+ * sort, removeDuplicates and trim work on the arrays and order the rows
+ * as Select.sortResult, Select.removeDuplicates and Select.trimResult
+ * order the Records of a Result. filter and select evaluate comparisons
+ * over blocks of rows with selection vectors. Values are only boxed by
+ * toResult.
+ *
+ * @version 1.0.0.1
+ */
+class ColumnarResult {
+    private static final int OBJECT = 0, INT = 1, LONG = 2, DOUBLE = 3,
+			     STRING = 4;
+
+    // rows per block of filter
+    static final int	     BLOCK = 1024;
+    int			     iType[];
+
+    // column labels, kept for toResult; null when not known
+    String		     sLabel[];
+    String		     sTable[];
+    String		     sName[];
+    private int		     len;
+    private int		     size;
+    private int		     kind[];
+    private int		     intData[][];
+    private long	     longData[][];
+    private double	     doubleData[][];
+    private Object	     objectData[][];
+    private int		     nulls[][];
+    private String	     dict[][];
+    private int		     dictSize[];
+    private Hashtable	     dictCode[];
+
+    /**
+     * Constructor declaration
+     *
+     *
+     * @param type the column types
+     */
+    ColumnarResult(int type[]) {
+	len = type.length;
+	iType = type;
+	kind = new int[len];
+	intData = new int[len][];
+	longData = new long[len][];
+	doubleData = new double[len][];
+	objectData = new Object[len][];
+	nulls = new int[len][];
+	dict = new String[len][];
+	dictSize = new int[len];
+	dictCode = new Hashtable[len];
+
+	for (int i = 0; i < len; i++) {
+	    switch (type[i]) {
+
+	    case Types.TINYINT :
+	    case Types.SMALLINT :
+	    case Types.INTEGER :
+		kind[i] = INT;
+		break;
+
+	    case Types.BIGINT :
+		kind[i] = LONG;
+		break;
+
+	    case Types.FLOAT :
+	    case Types.DOUBLE :
+		kind[i] = DOUBLE;
+		break;
+
+	    case Types.CHAR :
+	    case Types.VARCHAR :
+	    case Types.LONGVARCHAR :
+	    case Column.VARCHAR_IGNORECASE :
+		kind[i] = STRING;
+		dict[i] = new String[16];
+		dictCode[i] = new Hashtable();
+		break;
+
+	    default :
+		kind[i] = OBJECT;
+	    }
+	}
+
+	allocate(16);
+    }
+
+    /**
+     * Copies the rows and the column labels of a Result.
+     *
+     *
+     * @param r
+     *
+     * @return
+     */
+    static ColumnarResult fromResult(Result r) {
+	ColumnarResult c = new ColumnarResult(r.iType);
+
+	c.sLabel = r.sLabel;
+	c.sTable = r.sTable;
+	c.sName = r.sName;
+
+	for (Record n = r.rRoot; n != null; n = n.next) {
+	    c.add(n.data);
+	}
+
+	return c;
+    }
+
+    /**
+     * Boxes the rows into a new Result with the column labels.
+     *
+     *
+     * @return
+     */
+    Result toResult() {
+	Result r = new Result(len);
+
+	for (int i = 0; i < len; i++) {
+	    r.iType[i] = iType[i];
+
+	    if (sLabel != null) {
+		r.sLabel[i] = sLabel[i];
+		r.sTable[i] = sTable[i];
+		r.sName[i] = sName[i];
+	    }
+	}
+
+	for (int row = 0; row < size; row++) {
+	    Object data[] = new Object[len];
+
+	    for (int i = 0; i < len; i++) {
+		data[i] = getValue(i, row);
+	    }
+
+	    r.add(data);
+	}
+
+	return r;
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @return
+     */
+    int getSize() {
+	return size;
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @param data
+     */
+    void add(Object data[]) {
+	if (size == nulls[0].length * 32) {
+	    allocate(size * 2);
+	}
+
+	for (int i = 0; i < len; i++) {
+	    Object o = data[i];
+
+	    if (o == null) {
+		nulls[i][size >> 5] |= 1 << (size & 31);
+
+		continue;
+	    }
+
+	    switch (kind[i]) {
+
+	    case INT :
+		intData[i][size] = ((Number) o).intValue();
+		break;
+
+	    case LONG :
+		longData[i][size] = ((Number) o).longValue();
+		break;
+
+	    case DOUBLE :
+		doubleData[i][size] = ((Number) o).doubleValue();
+		break;
+
+	    case STRING :
+		intData[i][size] = getCode(i, (String) o);
+		break;
+
+	    default :
+		objectData[i][size] = o;
+	    }
+	}
+
+	size++;
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @param col
+     * @param row
+     *
+     * @return
+     */
+    boolean isNull(int col, int row) {
+	return (nulls[col][row >> 5] & (1 << (row & 31))) != 0;
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @param col
+     * @param row
+     *
+     * @return the value boxed to the type of the column
+     */
+    Object getValue(int col, int row) {
+	if (isNull(col, row)) {
+	    return null;
+	}
+
+	switch (kind[col]) {
+
+	case INT :
+	    return new Integer(intData[col][row]);
+
+	case LONG :
+	    return new Long(longData[col][row]);
+
+	case DOUBLE :
+	    return new Double(doubleData[col][row]);
+
+	case STRING :
+	    return dict[col][intData[col][row]];
+
+	default :
+	    return objectData[col][row];
+	}
+    }
+
+    /**
+     * Sorts the rows, with the same order as Select.sortResult.
+     *
+     *
+     * @param order
+     * @param way
+     *
+     * @throws SQLException
+     */
+    void sort(int order[], int way[]) throws SQLException {
+	int rank[][] = getRanks(order);
+	int idx[] = new int[size];
+	int tmp[] = new int[size];
+
+	for (int i = 0; i < size; i++) {
+	    idx[i] = i;
+	}
+
+	// bottom-up merge sort of the row indexes; stable like sortResult
+	for (int width = 1; width < size; width <<= 1) {
+	    for (int lo = 0; lo < size; lo += width << 1) {
+		int mid = Math.min(lo + width, size);
+		int hi = Math.min(lo + (width << 1), size);
+		int a = lo, b = mid, t = lo;
+
+		while (a < mid && b < hi) {
+		    if (compareRows(idx[a], idx[b], order, way, rank) > 0) {
+			tmp[t++] = idx[b++];
+		    } else {
+			tmp[t++] = idx[a++];
+		    }
+		}
+
+		while (a < mid) {
+		    tmp[t++] = idx[a++];
+		}
+
+		while (b < hi) {
+		    tmp[t++] = idx[b++];
+		}
+	    }
+
+	    int swap[] = idx;
+
+	    idx = tmp;
+	    tmp = swap;
+	}
+
+	permute(idx, size);
+    }
+
+    /**
+     * Sorts on all columns and removes the duplicate rows, as
+     * Select.removeDuplicates does.
+     *
+     *
+     * @throws SQLException
+     */
+    void removeDuplicates() throws SQLException {
+	int order[] = new int[len];
+	int way[] = new int[len];
+
+	for (int i = 0; i < len; i++) {
+	    order[i] = i;
+	    way[i] = 1;
+	}
+
+	sort(order, way);
+
+	if (size == 0) {
+	    return;
+	}
+
+	int rank[][] = getRanks(order);
+	int idx[] = new int[size];
+	int count = 1;
+
+	for (int i = 1; i < size; i++) {
+	    if (compareRows(idx[count - 1], i, order, way, rank) != 0) {
+		idx[count++] = i;
+	    }
+	}
+
+	permute(idx, count);
+    }
+
+    /**
+     * Keeps the first maxrows rows, or the first row when maxrows is 0
+     * or less, as Select.trimResult does.
+     *
+     *
+     * @param maxrows
+     */
+    void trim(int maxrows) {
+	int keep = maxrows > 0 ? maxrows
+			       : 1;
+
+	if (keep < size) {
+	    permute(null, keep);
+	}
+    }
+
+    /**
+     * Keeps the rows for which the comparison of column col with value is
+     * true. The rows are taken BLOCK at a time through select.
+     *
+     *
+     * @param col
+     * @param op Expression.EQUAL, NOT_EQUAL, BIGGER, BIGGER_EQUAL,
+     *  SMALLER or SMALLER_EQUAL
+     * @param value a non-null value of the type of the column
+     *
+     * @throws SQLException
+     */
+    void filter(int col, int op, Object value) throws SQLException {
+	int keep[] = new int[size];
+	int count = 0;
+	int sel[] = new int[BLOCK];
+
+	for (int start = 0; start < size; start += BLOCK) {
+	    int n = Math.min(BLOCK, size - start);
+
+	    for (int i = 0; i < n; i++) {
+		sel[i] = start + i;
+	    }
+
+	    n = select(col, op, value, sel, n);
+
+	    System.arraycopy(sel, 0, keep, count, n);
+
+	    count += n;
+	}
+
+	permute(keep, count);
+    }
+
+    /**
+     * Narrows a selection vector to the rows for which the comparison of
+     * column col with value is true. A null never compares true. Several
+     * calls on the same vector evaluate an AND; union evaluates an OR.
+     *
+     *
+     * @param col
+     * @param op
+     * @param value
+     * @param sel the selected row indexes, in ascending order
+     * @param count the number of indexes in sel
+     *
+     * @return the number of indexes left at the start of sel
+     *
+     * @throws SQLException
+     */
+    int select(int col, int op, Object value, int sel[],
+	       int count) throws SQLException {
+	int nullbits[] = nulls[col];
+	int out = 0;
+
+	switch (kind[col]) {
+
+	case INT : {
+	    int data[] = intData[col];
+	    int v = ((Number) value).intValue();
+
+	    for (int i = 0; i < count; i++) {
+		int row = sel[i];
+		int x = data[row];
+
+		if ((nullbits[row >> 5] & (1 << (row & 31))) == 0
+			&& test(op, x > v ? 1
+					  : x < v ? -1
+						  : 0)) {
+		    sel[out++] = row;
+		}
+	    }
+
+	    break;
+	}
+	case LONG : {
+	    long data[] = longData[col];
+	    long v = ((Number) value).longValue();
+
+	    for (int i = 0; i < count; i++) {
+		int  row = sel[i];
+		long x = data[row];
+
+		if ((nullbits[row >> 5] & (1 << (row & 31))) == 0
+			&& test(op, x > v ? 1
+					  : x < v ? -1
+						  : 0)) {
+		    sel[out++] = row;
+		}
+	    }
+
+	    break;
+	}
+	case DOUBLE : {
+	    double data[] = doubleData[col];
+	    double v = ((Number) value).doubleValue();
+
+	    for (int i = 0; i < count; i++) {
+		int    row = sel[i];
+		double x = data[row];
+
+		if ((nullbits[row >> 5] & (1 << (row & 31))) == 0
+			&& test(op, x > v ? 1
+					  : x < v ? -1
+						  : 0)) {
+		    sel[out++] = row;
+		}
+	    }
+
+	    break;
+	}
+	case STRING : {
+
+	    // each distinct string is compared once
+	    int		     data[] = intData[col];
+	    boolean	     match[] = new boolean[dictSize[col]];
+	    RecordComparator c = RecordComparator.newComparator(new int[]{
+		iType[col] }, 1);
+	    Object	     a[] = new Object[1];
+	    Object	     b[] = new Object[]{ value };
+
+	    for (int i = 0; i < match.length; i++) {
+		a[0] = dict[col][i];
+		match[i] = test(op, c.compare(a, b));
+	    }
+
+	    for (int i = 0; i < count; i++) {
+		int row = sel[i];
+
+		if ((nullbits[row >> 5] & (1 << (row & 31))) == 0
+			&& match[data[row]]) {
+		    sel[out++] = row;
+		}
+	    }
+
+	    break;
+	}
+	default : {
+	    Object data[] = objectData[col];
+
+	    for (int i = 0; i < count; i++) {
+		int row = sel[i];
+
+		if (data[row] != null
+			&& test(op, Column.compare(data[row], value,
+						   iType[col]))) {
+		    sel[out++] = row;
+		}
+	    }
+	}
+	}
+
+	return out;
+    }
+
+    /**
+     * Merges two ascending selection vectors into out, for an OR of two
+     * conditions evaluated on the same rows.
+     *
+     *
+     * @param a
+     * @param na
+     * @param b
+     * @param nb
+     * @param out room for na + nb indexes
+     *
+     * @return the number of indexes in out
+     */
+    static int union(int a[], int na, int b[], int nb, int out[]) {
+	int i = 0, j = 0, n = 0;
+
+	while (i < na || j < nb) {
+	    if (j == nb || (i < na && a[i] < b[j])) {
+		out[n++] = a[i++];
+	    } else if (i == na || b[j] < a[i]) {
+		out[n++] = b[j++];
+	    } else {
+		out[n++] = a[i++];
+
+		j++;
+	    }
+	}
+
+	return n;
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @param op
+     * @param c the sign of the comparison of the row value with the value
+     *
+     * @return
+     *
+     * @throws SQLException
+     */
+    private static boolean test(int op, int c) throws SQLException {
+	switch (op) {
+
+	case Expression.EQUAL :
+	    return c == 0;
+
+	case Expression.NOT_EQUAL :
+	    return c != 0;
+
+	case Expression.BIGGER :
+	    return c > 0;
+
+	case Expression.BIGGER_EQUAL :
+	    return c >= 0;
+
+	case Expression.SMALLER :
+	    return c < 0;
+
+	case Expression.SMALLER_EQUAL :
+	    return c <= 0;
+
+	default :
+	    throw Trace.error(Trace.FUNCTION_NOT_SUPPORTED, String.valueOf(op));
+	}
+    }
+
+    /**
+     * Compares two rows on the order columns. Nulls are smaller than any
+     * value, as in Column.compare.
+     *
+     *
+     * @param x
+     * @param y
+     * @param order
+     * @param way
+     * @param rank
+     *
+     * @return
+     *
+     * @throws SQLException
+     */
+    private int compareRows(int x, int y, int order[], int way[],
+			    int rank[][]) throws SQLException {
+	for (int j = 0; j < order.length; j++) {
+	    int     col = order[j];
+	    boolean xnull = isNull(col, x);
+	    boolean ynull = isNull(col, y);
+	    int     i;
+
+	    if (xnull || ynull) {
+		i = xnull == ynull ? 0
+				   : xnull ? -1
+					   : 1;
+	    } else {
+		switch (kind[col]) {
+
+		case INT : {
+		    int a = intData[col][x], b = intData[col][y];
+
+		    i = a > b ? 1
+			      : a < b ? -1
+				      : 0;
+
+		    break;
+		}
+		case LONG : {
+		    long a = longData[col][x], b = longData[col][y];
+
+		    i = a > b ? 1
+			      : a < b ? -1
+				      : 0;
+
+		    break;
+		}
+		case DOUBLE : {
+		    double a = doubleData[col][x], b = doubleData[col][y];
+
+		    i = a > b ? 1
+			      : a < b ? -1
+				      : 0;
+
+		    break;
+		}
+		case STRING : {
+		    int a = rank[col][intData[col][x]];
+		    int b = rank[col][intData[col][y]];
+
+		    i = a > b ? 1
+			      : a < b ? -1
+				      : 0;
+
+		    break;
+		}
+		default :
+		    i = Column.compare(objectData[col][x],
+				       objectData[col][y], iType[col]);
+		}
+	    }
+
+	    if (i != 0) {
+		return i * way[j];
+	    }
+	}
+
+	return 0;
+    }
+
+    /**
+     * Returns for each string column in order the rank of each dictionary
+     * code in the sort order of the column. Strings that compare equal,
+     * such as two VARCHAR_IGNORECASE strings differing in case, get the
+     * same rank.
+     *
+     *
+     * @param order
+     *
+     * @return
+     */
+    private int[][] getRanks(int order[]) {
+	int rank[][] = new int[len][];
+
+	for (int j = 0; j < order.length; j++) {
+	    int col = order[j];
+
+	    if (kind[col] != STRING || rank[col] != null) {
+		continue;
+	    }
+
+	    int       n = dictSize[col];
+	    String    key[] = new String[n];
+	    String    sorted[] = new String[n];
+	    Hashtable pos = new Hashtable();
+	    int       r = 0;
+
+	    for (int i = 0; i < n; i++) {
+		key[i] = iType[col] == Column.VARCHAR_IGNORECASE
+			 ? dict[col][i].toUpperCase()
+			 : dict[col][i];
+		sorted[i] = key[i];
+	    }
+
+	    Arrays.sort(sorted);
+
+	    for (int i = 0; i < n; i++) {
+		if (i == 0 ||!sorted[i].equals(sorted[i - 1])) {
+		    pos.put(sorted[i], new Integer(r++));
+		}
+	    }
+
+	    rank[col] = new int[n];
+
+	    for (int i = 0; i < n; i++) {
+		rank[col][i] = ((Integer) pos.get(key[i])).intValue();
+	    }
+	}
+
+	return rank;
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @param col
+     * @param s
+     *
+     * @return the dictionary code of s, added if new
+     */
+    private int getCode(int col, String s) {
+	Integer code = (Integer) dictCode[col].get(s);
+
+	if (code != null) {
+	    return code.intValue();
+	}
+
+	int n = dictSize[col]++;
+
+	if (n == dict[col].length) {
+	    String d[] = new String[n * 2];
+
+	    System.arraycopy(dict[col], 0, d, 0, n);
+
+	    dict[col] = d;
+	}
+
+	dict[col][n] = s;
+
+	dictCode[col].put(s, new Integer(n));
+
+	return n;
+    }
+
+    /**
+     * Rebuilds the columns with the rows idx[0] .. idx[count - 1], or the
+     * first count rows if idx is null.
+     *
+     *
+     * @param idx
+     * @param count
+     */
+    private void permute(int idx[], int count) {
+	// allocate replaces the arrays of each column in place
+	int    oldint[][] = (int[][]) intData.clone();
+	long   oldlong[][] = (long[][]) longData.clone();
+	double olddouble[][] = (double[][]) doubleData.clone();
+	Object oldobject[][] = (Object[][]) objectData.clone();
+	int    oldnulls[][] = (int[][]) nulls.clone();
+
+	size = 0;
+
+	allocate(Math.max(count, 16));
+
+	for (int row = 0; row < count; row++) {
+	    int from = idx == null ? row
+				   : idx[row];
+
+	    for (int i = 0; i < len; i++) {
+		if ((oldnulls[i][from >> 5] & (1 << (from & 31))) != 0) {
+		    nulls[i][row >> 5] |= 1 << (row & 31);
+
+		    continue;
+		}
+
+		switch (kind[i]) {
+
+		case INT :
+		case STRING :
+		    intData[i][row] = oldint[i][from];
+		    break;
+
+		case LONG :
+		    longData[i][row] = oldlong[i][from];
+		    break;
+
+		case DOUBLE :
+		    doubleData[i][row] = olddouble[i][from];
+		    break;
+
+		default :
+		    objectData[i][row] = oldobject[i][from];
+		}
+	    }
+	}
+
+	size = count;
+    }
+
+    /**
+     * Allocates the column arrays for capacity rows and copies the
+     * current rows into them.
+     *
+     *
+     * @param capacity
+     */
+    private void allocate(int capacity) {
+	capacity = (capacity + 31) & ~31;
+
+	for (int i = 0; i < len; i++) {
+	    int n[] = new int[capacity >> 5];
+
+	    if (nulls[i] != null) {
+		System.arraycopy(nulls[i], 0, n, 0, (size + 31) >> 5);
+	    }
+
+	    nulls[i] = n;
+
+	    switch (kind[i]) {
+
+	    case INT :
+	    case STRING : {
+		int a[] = new int[capacity];
+
+		if (intData[i] != null) {
+		    System.arraycopy(intData[i], 0, a, 0, size);
+		}
+
+		intData[i] = a;
+
+		break;
+	    }
+	    case LONG : {
+		long a[] = new long[capacity];
+
+		if (longData[i] != null) {
+		    System.arraycopy(longData[i], 0, a, 0, size);
+		}
+
+		longData[i] = a;
+
+		break;
+	    }
+	    case DOUBLE : {
+		double a[] = new double[capacity];
+
+		if (doubleData[i] != null) {
+		    System.arraycopy(doubleData[i], 0, a, 0, size);
+		}
+
+		doubleData[i] = a;
+
+		break;
+	    }
+	    default : {
+		Object a[] = new Object[capacity];
+
+		if (objectData[i] != null) {
+		    System.arraycopy(objectData[i], 0, a, 0, size);
+		}
+
+		objectData[i] = a;
+	    }
+	    }
+	}
+    }
+}
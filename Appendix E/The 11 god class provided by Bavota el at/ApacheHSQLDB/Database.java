@@ -68,7 +68,6 @@ package org.hsqldb;
 
 import java.io.IOException;
 
-import org.hsqldb.lib.ArrayUtil;
 import org.hsqldb.lib.FileUtil;
 import org.hsqldb.lib.HashMap;
 import org.hsqldb.lib.HsqlArrayList;
@@ -124,12 +123,30 @@ public class Database {
     boolean                isNew;
     private UserManager    userManager;
     private HsqlArrayList  tTable;
+
+    /** table name => HsqlArrayList of the tables with that name */
+    private HashMap        tableNames;
+
+    /** Table => Integer position in tTable, checked before use */
+    private HashMap        tableIndexes;
+
+    /** table or view name => HsqlArrayList of the views that reference it */
+    private HashMap        viewDependents;
+
+    /** View => HsqlArrayList of the names the view references */
+    private HashMap        viewReferences;
+
+    /** all views, in the order they were linked */
+    private HsqlArrayList  viewList;
     DatabaseInformation    dInfo;
     ClassLoader            classLoader;
 
-    /** indicates the state of the database */
-    private int dbState;
-    Logger      logger;
+    /**
+     * indicates the state of the database; written under the Database
+     * monitor, read without it
+     */
+    private volatile int dbState;
+    Logger               logger;
 
     /** true means that all tables are readonly. */
     boolean databaseReadOnly;
@@ -157,6 +174,13 @@ public class Database {
     SequenceManager                sequenceManager;
     CompiledStatementManager       compiledStatementManager;
 
+    /** cache of SELECT results, null unless enabled by a property */
+    private ResultCache resultCache;
+
+    /** milliseconds spent in each phase of the current reopen */
+    private StringBuffer startupTimings;
+    private long         phaseStart;
+
     //
     static final int DATABASE_ONLINE       = 1;
     static final int DATABASE_OPENING      = 4;
@@ -190,6 +214,9 @@ public class Database {
 
         setState(DATABASE_OPENING);
 
+        startupTimings = new StringBuffer();
+        phaseStart     = System.currentTimeMillis();
+
         try {
             User sysUser;
 
@@ -200,9 +227,22 @@ public class Database {
 
             databaseProperties.load();
             databaseProperties.setURLProperties(urlProperties);
+
+            int cacheRows = databaseProperties.getIntegerProperty(
+                "sql.result_cache_rows", 0);
+
+            resultCache = cacheRows > 0 ? new ResultCache(cacheRows)
+                                        : null;
+
+            endPhase("properties");
             compiledStatementManager.reset();
 
             tTable                = new HsqlArrayList();
+            tableNames            = new HashMap();
+            tableIndexes          = new HashMap();
+            viewDependents        = new HashMap();
+            viewReferences        = new HashMap();
+            viewList              = new HsqlArrayList();
             userManager           = new UserManager();
             hAlias                = Library.getAliasMap();
             nameManager           = new HsqlNameManager();
@@ -215,10 +255,14 @@ public class Database {
             sessionManager        = new SessionManager(this, sysUser);
             dInfo = DatabaseInformation.newDatabaseInformation(this);
 
+            endPhase("structures");
+
             if (sType != DatabaseManager.S_MEM) {
                 logger.openLog(this);
             }
 
+            endPhase("log");
+
             if (isNew) {
                 sessionManager.getSysSession().sqlExecuteDirectNoPreChecks(
                     "CREATE USER SA PASSWORD \"\" ADMIN");
@@ -226,6 +270,7 @@ public class Database {
             }
 
             dInfo.setWithContent(true);
+            endPhase("system tables");
         } catch (Throwable e) {
             logger.closeLog(Database.CLOSEMODE_IMMEDIATELY);
             logger.releaseLock();
@@ -240,6 +285,24 @@ public class Database {
         }
 
         setState(DATABASE_ONLINE);
+        Trace.printSystemOut("open " + sName + startupTimings);
+
+        startupTimings = null;
+    }
+
+    /**
+     * Records the time since the end of the previous phase of reopen:
+     * loading the properties, creating the empty structures, replaying
+     * the script and log, or setting up the system tables.
+     */
+    private void endPhase(String name) {
+
+        long now = System.currentTimeMillis();
+
+        startupTimings.append(' ').append(name).append(' ').append(
+            now - phaseStart).append(" ms;");
+
+        phaseStart = now;
     }
 
     /**
@@ -257,6 +320,11 @@ public class Database {
 
         isNew              = false;
         tTable             = null;
+        tableNames         = null;
+        tableIndexes       = null;
+        viewDependents     = null;
+        viewReferences     = null;
+        viewList           = null;
         userManager        = null;
         hAlias             = null;
         nameManager        = null;
@@ -266,6 +334,7 @@ public class Database {
         sequenceManager    = null;
         sessionManager     = null;
         dInfo              = null;
+        resultCache        = null;
     }
 
     /**
@@ -289,10 +358,18 @@ public class Database {
         return databaseProperties;
     }
 
+    /**
+     *  Returns the cache of SELECT results, or null if the
+     *  sql.result_cache_rows property is not set.
+     */
+    ResultCache getResultCache() {
+        return resultCache;
+    }
+
     /**
      *  Returns true if database has been shut down, false otherwise
      */
-    synchronized boolean isShutdown() {
+    boolean isShutdown() {
         return dbState == DATABASE_SHUTDOWN;
     }
 
@@ -436,11 +513,120 @@ public class Database {
         return t;
     }
 
+    /**
+     *  Retruns the specified user-defined table or view visible within the
+     *  context of the specified Session, or null if not found. Temp tables
+     *  of other Sessions share the name list of a table but are skipped.
+     *  Each hit is checked against the table list. A table renamed in
+     *  place or replaced in the list is found by a scan, and the name
+     *  lookup is corrected.
+     */
+    Table findUserTable(Session session, String name) {
+
+        HsqlArrayList list = (HsqlArrayList) tableNames.get(name);
+
+        for (int i = 0; list != null && i < list.size(); i++) {
+            Table t = (Table) list.get(i);
+
+            if (!t.getName().name.equals(name) || getTableIndex(t) == -1) {
+                list.remove(i--);
+
+                continue;
+            }
+
+            if (t.equals(session, name)) {
+                return t;
+            }
+        }
+
+        for (int i = 0, tsize = tTable.size(); i < tsize; i++) {
+            Table t = (Table) tTable.get(i);
+
+            if (t.equals(session, name)) {
+                addTableName(name, t);
+
+                return t;
+            }
+        }
+
+        return null;
+    }
+
     /**
      *  Registers the specified table or view with this Database.
      */
     void linkTable(Table t) {
+
         tTable.add(t);
+        tableIndexes.put(t, new Integer(tTable.size() - 1));
+        addTableName(t.getName().name, t);
+
+        if (t.isView()) {
+            viewList.add(t);
+            addViewDependencies((View) t);
+        }
+    }
+
+    /**
+     *  Removes the specified table or view from this Database.
+     */
+    void unlinkTable(Table t) {
+
+        int i = getTableIndex(t);
+
+        if (i == -1) {
+            return;
+        }
+
+        tTable.remove(i);
+        removeTableName(t.getName().name, t);
+
+        // positions after i have moved; they are rebuilt on the next lookup
+        tableIndexes.clear();
+
+        if (t.isView()) {
+            unlinkView((View) t);
+        }
+    }
+
+    /**
+     *  Updates the name lookup after the specified table has been renamed.
+     */
+    void renameTable(Table t, String oldname) {
+        removeTableName(oldname, t);
+        addTableName(t.getName().name, t);
+    }
+
+    private void addTableName(String name, Table t) {
+
+        HsqlArrayList list = (HsqlArrayList) tableNames.get(name);
+
+        if (list == null) {
+            list = new HsqlArrayList();
+
+            tableNames.put(name, list);
+        }
+
+        list.add(t);
+    }
+
+    private void removeTableName(String name, Table t) {
+
+        HsqlArrayList list = (HsqlArrayList) tableNames.get(name);
+
+        if (list == null) {
+            return;
+        }
+
+        for (int i = list.size() - 1; i >= 0; i--) {
+            if (list.get(i) == t) {
+                list.remove(i);
+            }
+        }
+
+        if (list.size() == 0) {
+            tableNames.remove(name);
+        }
     }
 
     /**
@@ -484,15 +670,29 @@ public class Database {
      */
     int getTableIndex(Table table) {
 
-        for (int i = 0, tsize = tTable.size(); i < tsize; i++) {
-            Table t = (Table) tTable.get(i);
+        Integer i = (Integer) tableIndexes.get(table);
+
+        if (i != null && i.intValue() < tTable.size()
+                && tTable.get(i.intValue()) == table) {
+            return i.intValue();
+        }
+
+        // the positions are stale after a removal, so renumber all tables
+        tableIndexes.clear();
+
+        int index = -1;
+
+        for (int j = 0, tsize = tTable.size(); j < tsize; j++) {
+            Table t = (Table) tTable.get(j);
+
+            tableIndexes.put(t, new Integer(j));
 
             if (t == table) {
-                return i;
+                index = j;
             }
         }
 
-        return -1;
+        return index;
     }
 
     /**
@@ -636,21 +836,28 @@ public class Database {
      */
     private View[] getViewsWithView(View view) {
 
-        HsqlArrayList list = null;
+        HsqlArrayList list       = null;
+        HsqlArrayList dependents =
+            (HsqlArrayList) viewDependents.get(view.getName().name);
 
-        for (int i = 0; i < tTable.size(); i++) {
-            Table t = (Table) tTable.get(i);
+        for (int i = 0; dependents != null && i < dependents.size(); i++) {
+            View v = (View) dependents.get(i);
 
-            if (t.isView()) {
-                boolean found = ((View) t).hasView(view);
+            if (!isLinked(v)) {
 
-                if (found) {
-                    if (list == null) {
-                        list = new HsqlArrayList();
-                    }
+                // dropped without a call to unlinkView
+                dependents.remove(i--);
+                unlinkView(v);
+
+                continue;
+            }
 
-                    list.add(t);
+            if (v.hasView(view)) {
+                if (list == null) {
+                    list = new HsqlArrayList();
                 }
+
+                list.add(v);
             }
         }
 
@@ -664,23 +871,28 @@ public class Database {
      */
     private View[] getViewsWithTable(String table, String column) {
 
-        HsqlArrayList list = null;
+        HsqlArrayList list       = null;
+        HsqlArrayList dependents = (HsqlArrayList) viewDependents.get(table);
 
-        for (int i = 0; i < tTable.size(); i++) {
-            Table t = (Table) tTable.get(i);
+        for (int i = 0; dependents != null && i < dependents.size(); i++) {
+            View v = (View) dependents.get(i);
 
-            if (t.isView()) {
-                boolean found = column == null ? ((View) t).hasTable(table)
-                                               : ((View) t).hasColumn(table,
-                                                   column);
+            if (!isLinked(v)) {
+                dependents.remove(i--);
+                unlinkView(v);
 
-                if (found) {
-                    if (list == null) {
-                        list = new HsqlArrayList();
-                    }
+                continue;
+            }
+
+            boolean found = column == null ? v.hasTable(table)
+                                           : v.hasColumn(table, column);
 
-                    list.add(t);
+            if (found) {
+                if (list == null) {
+                    list = new HsqlArrayList();
                 }
+
+                list.add(v);
             }
         }
 
@@ -695,19 +907,22 @@ public class Database {
 
         HsqlArrayList list = null;
 
-        for (int i = 0; i < tTable.size(); i++) {
-            Table t = (Table) tTable.get(i);
+        for (int i = 0; i < viewList.size(); i++) {
+            View v = (View) viewList.get(i);
 
-            if (t.isView()) {
-                boolean found = ((View) t).hasSequence(sequence);
+            if (!isLinked(v)) {
+                viewList.remove(i--);
+                unlinkView(v);
 
-                if (found) {
-                    if (list == null) {
-                        list = new HsqlArrayList();
-                    }
+                continue;
+            }
 
-                    list.add(t);
+            if (v.hasSequence(sequence)) {
+                if (list == null) {
+                    list = new HsqlArrayList();
                 }
+
+                list.add(v);
             }
         }
 
@@ -726,6 +941,171 @@ public class Database {
         if (viewlist != null) {
             for (int i = 0; i < viewlist.length; i++) {
                 viewlist[i].compile();
+                removeViewDependencies(viewlist[i]);
+                addViewDependencies(viewlist[i]);
+            }
+        }
+    }
+
+    /**
+     * Records the names that occur in the statement of a newly linked or
+     * recompiled view, so that only the views whose statement names a
+     * table or view are tested by the lookups. The names are not tested
+     * here, as a view used by another view is expanded as a subquery
+     * and need not pass hasTable.
+     */
+    private void addViewDependencies(View view) {
+
+        HsqlArrayList names      = new HsqlArrayList();
+        HsqlArrayList candidates = getStatementNames(view.getStatement());
+
+        for (int i = 0; i < candidates.size(); i++) {
+            String name = (String) candidates.get(i);
+
+            if (name.equals(view.getName().name)) {
+                continue;
+            }
+
+            HsqlArrayList dependents =
+                (HsqlArrayList) viewDependents.get(name);
+
+            if (dependents == null) {
+                dependents = new HsqlArrayList();
+
+                viewDependents.put(name, dependents);
+            }
+
+            dependents.add(view);
+            names.add(name);
+        }
+
+        viewReferences.put(view, names);
+    }
+
+    /**
+     * Returns the distinct identifiers in an SQL statement. Unquoted
+     * identifiers are returned in upper case, quoted ones as written.
+     * String literals and comments are skipped.
+     */
+    private static HsqlArrayList getStatementNames(String sql) {
+
+        HsqlArrayList names = new HsqlArrayList();
+        HashMap       found = new HashMap();
+        int           len   = sql.length();
+        int           i     = 0;
+
+        while (i < len) {
+            char   c    = sql.charAt(i);
+            String name = null;
+
+            if (c == '\'') {
+                for (i++; i < len; i++) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < len && sql.charAt(i + 1) == '\'') {
+                            i++;
+                        } else {
+                            break;
+                        }
+                    }
+                }
+
+                i++;
+            } else if (c == '-' && i + 1 < len && sql.charAt(i + 1) == '-') {
+                while (i < len && sql.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '"') {
+                StringBuffer b = new StringBuffer();
+
+                for (i++; i < len; i++) {
+                    if (sql.charAt(i) == '"') {
+                        if (i + 1 < len && sql.charAt(i + 1) == '"') {
+                            i++;
+                        } else {
+                            break;
+                        }
+                    }
+
+                    b.append(sql.charAt(i));
+                }
+
+                i++;
+
+                name = b.toString();
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+
+                while (i < len
+                        && Character.isJavaIdentifierPart(sql.charAt(i))) {
+                    i++;
+                }
+
+                name = sql.substring(start, i).toUpperCase();
+            } else if (Character.isDigit(c)) {
+                while (i < len
+                        && Character.isJavaIdentifierPart(sql.charAt(i))) {
+                    i++;
+                }
+            } else {
+                i++;
+            }
+
+            if (name != null &&!found.containsKey(name)) {
+                found.put(name, name);
+                names.add(name);
+            }
+        }
+
+        return names;
+    }
+
+    /**
+     * Returns true if the table or view is in the table list. Views that
+     * were dropped without unlinkView are skipped by the view lookups.
+     */
+    private boolean isLinked(Table t) {
+        return getTableIndex(t) != -1;
+    }
+
+    /**
+     * Removes the dependencies of a view, when it is dropped or before it
+     * is recompiled.
+     */
+    void removeViewDependencies(View view) {
+
+        HsqlArrayList names = (HsqlArrayList) viewReferences.remove(view);
+
+        for (int i = 0; names != null && i < names.size(); i++) {
+            HsqlArrayList dependents =
+                (HsqlArrayList) viewDependents.get(names.get(i));
+
+            if (dependents == null) {
+                continue;
+            }
+
+            for (int j = dependents.size() - 1; j >= 0; j--) {
+                if (dependents.get(j) == view) {
+                    dependents.remove(j);
+                }
+            }
+
+            if (dependents.size() == 0) {
+                viewDependents.remove(names.get(i));
+            }
+        }
+    }
+
+    /**
+     * Removes a dropped view from the view lookups. The caller removes it
+     * from the table list.
+     */
+    void unlinkView(View view) {
+
+        removeViewDependencies(view);
+
+        for (int i = viewList.size() - 1; i >= 0; i--) {
+            if (viewList.get(i) == view) {
+                viewList.remove(i);
             }
         }
     }
@@ -743,18 +1123,30 @@ public class Database {
      */
     void removeExportedKeys(Table toDrop) {
 
-        for (int i = 0; i < tTable.size(); i++) {
-            Table table = (Table) tTable.get(i);
+        for (int i = 0, tsize = tTable.size(); i < tsize; i++) {
+            Table        table = (Table) tTable.get(i);
+            Constraint[] list  = table.constraintList;
+            int          count = 0;
+
+            for (int j = 0; j < list.length; j++) {
+                if (list[j].getRef() != toDrop) {
+                    count++;
+                }
+            }
+
+            if (count == list.length) {
+                continue;
+            }
 
-            for (int j = table.constraintList.length - 1; j >= 0; j--) {
-                Table refTable = table.constraintList[j].getRef();
+            Constraint[] newlist = new Constraint[count];
 
-                if (toDrop == refTable) {
-                    table.constraintList =
-                        (Constraint[]) ArrayUtil.toAdjustedArray(
-                            table.constraintList, null, j, -1);
+            for (int j = 0, k = 0; j < list.length; j++) {
+                if (list[j].getRef() != toDrop) {
+                    newlist[k++] = list[j];
                 }
             }
+
+            table.constraintList = newlist;
         }
     }
 
@@ -798,6 +1190,10 @@ public class Database {
             dInfo.setDirty();
         }
 
+        if (resultCache != null) {
+            resultCache.clear();
+        }
+
         if (resetPrepared) {
             this.compiledStatementManager.resetStatements();
         }
@@ -815,12 +1211,39 @@ public class Database {
     /** last statement level change number for DML statements - used for all statements */
     private long dmlSCN = 0;
 
+    /**
+     * Called after a DML statement has changed the rows of a table. Takes
+     * a new DML change number and passes it to the result cache, which
+     * drops the cached Results that read the table.
+     */
+    synchronized void setTableChanged(Table t) {
+
+        dmlSCN++;
+
+        if (resultCache != null) {
+            resultCache.tableChanged(t.getName().name, dmlSCN);
+        }
+    }
+
+    /**
+     * Called after a ROLLBACK has restored rows. The tables that were
+     * restored are not known here, so the whole result cache is cleared.
+     */
+    synchronized void setRolledBack() {
+
+        dmlSCN++;
+
+        if (resultCache != null) {
+            resultCache.clear();
+        }
+    }
+
 
     private synchronized void setState(int state) {
         dbState = state;
     }
 
-    synchronized int getState() {
+    int getState() {
         return dbState;
     }
 
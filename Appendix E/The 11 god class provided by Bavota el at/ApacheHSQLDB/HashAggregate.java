@@ -0,0 +1,303 @@
+/*
+ * HashAggregate.java
+ *
+ * Copyright (c) 2001, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This package is based on HypersonicSQL, originally developed by Thomas Mueller.
+ *
+ */
+package org.hsqldb;
+
+import java.sql.*;
+
+/**
+ * Hash aggregation for GROUP BY. <p>
+ *
+ * Rows are added in any order and are grouped in a ResultHashTable on the
+ * group columns. COUNT, SUM and AVG over integral and FLOAT / DOUBLE
+ * columns are accumulated in long and double arrays and are only boxed
+ * when the row of a group is read with getRow. All other aggregates go
+ * through Column.sum, Column.min and Column.max as in
+ * Select.updateAggregateRow; MIN and MAX do not allocate there.
+ *
+ * @version 1.0.0.1
+ */
+class HashAggregate {
+    private static final int OBJECT = 0, LONG = 1, DOUBLE = 2;
+    private int		     len;
+    private int		     exprType[];
+    private int		     dataType[];
+    private int		     kind[];
+    private ResultHashTable  groups;
+    private Object	     row[][];
+    private int		     count[];
+    private long	     lsum[][];
+    private double	     dsum[][];
+    private boolean	     hasValue[][];
+
+    /**
+     * Constructor declaration
+     *
+     *
+     * @param exprType the Expression type of each column
+     * @param dataType the data type of each column
+     * @param groupColumn the group columns
+     */
+    HashAggregate(int exprType[], int dataType[], int groupColumn[]) {
+	len = exprType.length;
+	this.exprType = exprType;
+	this.dataType = dataType;
+	kind = new int[len];
+	groups = new ResultHashTable(dataType, groupColumn);
+	row = new Object[16][];
+	count = new int[16];
+	lsum = new long[len][];
+	dsum = new double[len][];
+	hasValue = new boolean[len][];
+
+	for (int i = 0; i < len; i++) {
+	    kind[i] = getKind(exprType[i], dataType[i]);
+
+	    if (kind[i] == LONG) {
+		lsum[i] = new long[16];
+	    } else if (kind[i] == DOUBLE) {
+		dsum[i] = new double[16];
+	    }
+
+	    if (kind[i] != OBJECT) {
+		hasValue[i] = new boolean[16];
+	    }
+	}
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @param exprType
+     * @param dataType
+     *
+     * @return
+     */
+    private static int getKind(int exprType, int dataType) {
+	switch (exprType) {
+
+	case Expression.AVG :
+	case Expression.SUM :
+	case Expression.COUNT :
+	    switch (dataType) {
+
+	    case Types.TINYINT :
+	    case Types.SMALLINT :
+	    case Types.INTEGER :
+	    case Types.BIGINT :
+		return LONG;
+
+	    case Types.FLOAT :
+	    case Types.DOUBLE :
+		return DOUBLE;
+	    }
+	}
+
+	return OBJECT;
+    }
+
+    /**
+     * Adds a row to the group with the same values in the group columns.
+     *
+     *
+     * @param data
+     *
+     * @throws SQLException
+     */
+    void add(Object data[]) throws SQLException {
+	int g = groups.find(data);
+
+	if (g == -1) {
+	    g = groups.add(data);
+
+	    if (g == row.length) {
+		grow();
+	    }
+
+	    row[g] = new Object[len];
+	}
+
+	count[g]++;
+
+	Object r[] = row[g];
+
+	for (int i = 0; i < len; i++) {
+	    Object o = data[i];
+
+	    switch (kind[i]) {
+
+	    case LONG :
+		if (o != null) {
+		    lsum[i][g] += ((Number) o).longValue();
+		    hasValue[i][g] = true;
+		}
+		break;
+
+	    case DOUBLE :
+		if (o != null) {
+		    dsum[i][g] += ((Number) o).doubleValue();
+		    hasValue[i][g] = true;
+		}
+		break;
+
+	    default :
+		switch (exprType[i]) {
+
+		case Expression.AVG :
+		case Expression.SUM :
+		case Expression.COUNT :
+		    r[i] = Column.sum(r[i], o, dataType[i]);
+		    break;
+
+		case Expression.MIN :
+		    r[i] = Column.min(r[i], o, dataType[i]);
+		    break;
+
+		case Expression.MAX :
+		    r[i] = Column.max(r[i], o, dataType[i]);
+		    break;
+
+		default :
+		    r[i] = o;
+		    break;
+		}
+	    }
+	}
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @return the number of groups
+     */
+    int size() {
+	return groups.size();
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @param g
+     *
+     * @return the number of rows added to group g
+     */
+    int getCount(int g) {
+	return count[g];
+    }
+
+    /**
+     * Returns the aggregated row of group g, with the primitive sums
+     * boxed to the type Column.sum would have returned.
+     *
+     *
+     * @param g
+     *
+     * @return
+     */
+    Object[] getRow(int g) {
+	Object r[] = row[g];
+
+	for (int i = 0; i < len; i++) {
+	    if (kind[i] == OBJECT ||!hasValue[i][g]) {
+		continue;
+	    }
+
+	    switch (dataType[i]) {
+
+	    case Types.BIGINT :
+		r[i] = new Long(lsum[i][g]);
+		break;
+
+	    case Types.FLOAT :
+	    case Types.DOUBLE :
+		r[i] = new Double(dsum[i][g]);
+		break;
+
+	    default :
+
+		// wraps on overflow like the Integer addition of Column.sum
+		r[i] = new Integer((int) lsum[i][g]);
+		break;
+	    }
+	}
+
+	return r;
+    }
+
+    /**
+     * Method declaration
+     *
+     */
+    private void grow() {
+	int    size = row.length * 2;
+	Object r[][] = new Object[size][];
+	int    c[] = new int[size];
+
+	System.arraycopy(row, 0, r, 0, row.length);
+	System.arraycopy(count, 0, c, 0, count.length);
+
+	row = r;
+	count = c;
+
+	for (int i = 0; i < len; i++) {
+	    if (lsum[i] != null) {
+		long l[] = new long[size];
+
+		System.arraycopy(lsum[i], 0, l, 0, lsum[i].length);
+
+		lsum[i] = l;
+	    }
+
+	    if (dsum[i] != null) {
+		double d[] = new double[size];
+
+		System.arraycopy(dsum[i], 0, d, 0, dsum[i].length);
+
+		dsum[i] = d;
+	    }
+
+	    if (hasValue[i] != null) {
+		boolean b[] = new boolean[size];
+
+		System.arraycopy(hasValue[i], 0, b, 0, hasValue[i].length);
+
+		hasValue[i] = b;
+	    }
+	}
+    }
+}
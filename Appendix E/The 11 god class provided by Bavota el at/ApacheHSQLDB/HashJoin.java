@@ -0,0 +1,557 @@
+/*
+ * HashJoin.java
+ *
+ * Copyright (c) 2001, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This package is based on HypersonicSQL, originally developed by Thomas Mueller.
+ *
+ */
+package org.hsqldb;
+
+import java.io.*;
+import java.sql.*;
+
+/**
+ * Inner equi-join of two Results. <p>
+ *
+ * A ResultHashTable is built on the key columns of the smaller input and
+ * probed with each row of the larger one. Each joined row holds the
+ * columns of the left input followed by those of the right input. Rows
+ * with a null in a key column match no row. The key columns of the two
+ * inputs must be of the same types. <p>
+ *
+ * When the smaller input has more than maxrows rows, both inputs are
+ * first split by the hash of their keys into partitions in temporary
+ * files, and each pair of partitions is joined in memory. A partition is
+ * joined in memory even if it is still larger than maxrows, as happens
+ * when many rows share a key. The rows of both inputs are released as
+ * they are written, so on this path the inputs are left empty.
+ *
+ * @version 1.0.0.1
+ */
+class HashJoin {
+
+    // limits the number of temporary files open at the same time
+    private static final int MAX_PARTITIONS = 256;
+    private int     buildType[];
+    private int     buildKey[];
+    private int     probeType[];
+    private int     probeKey[];
+    private boolean buildIsLeft;
+    private Result  out;
+    private int     leftLen;
+
+    /**
+     * Constructor declaration
+     *
+     *
+     * @param build
+     * @param buildKey
+     * @param probe
+     * @param probeKey
+     * @param buildIsLeft
+     */
+    private HashJoin(Result build, int buildKey[], Result probe,
+		     int probeKey[], boolean buildIsLeft) {
+	buildType = build.iType;
+	this.buildKey = buildKey;
+	probeType = probe.iType;
+	this.probeKey = probeKey;
+	this.buildIsLeft = buildIsLeft;
+
+	Result left = buildIsLeft ? build
+				  : probe;
+	Result right = buildIsLeft ? probe
+				   : build;
+
+	leftLen = left.iType.length;
+	out = new Result(leftLen + right.iType.length);
+
+	System.arraycopy(left.iType, 0, out.iType, 0, leftLen);
+	System.arraycopy(right.iType, 0, out.iType, leftLen,
+			 right.iType.length);
+    }
+
+    /**
+     * Joins the rows of left and right with equal values in the key
+     * columns.
+     *
+     *
+     * @param left
+     * @param leftKey
+     * @param right
+     * @param rightKey
+     * @param maxrows rows of the build input held in memory, 0 means no
+     *  limit
+     *
+     * @return
+     *
+     * @throws SQLException
+     */
+    static Result join(Result left, int leftKey[], Result right,
+		       int rightKey[], int maxrows) throws SQLException {
+	int     leftSize = left.getSize();
+	int     rightSize = right.getSize();
+	boolean buildIsLeft = leftSize <= rightSize;
+	int     buildSize = buildIsLeft ? leftSize
+					: rightSize;
+	HashJoin j = buildIsLeft ? new HashJoin(left, leftKey, right,
+						rightKey, true)
+				 : new HashJoin(right, rightKey, left,
+						leftKey, false);
+	Result   build = buildIsLeft ? left
+				     : right;
+	Result   probe = buildIsLeft ? right
+				     : left;
+
+	if (maxrows > 0 && buildSize > maxrows) {
+	    try {
+		j.joinPartitioned(build, probe,
+				  Math.min(buildSize / maxrows + 1,
+					   MAX_PARTITIONS));
+	    } catch (IOException e) {
+		throw Trace.error(Trace.FILE_IO_ERROR, e.getMessage());
+	    }
+	} else {
+	    ResultHashTable h = j.buildTable(build.rRoot);
+
+	    for (Record n = probe.rRoot; n != null; n = n.next) {
+		j.probe(h, n.data);
+	    }
+	}
+
+	return j.out;
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @param n the first build row
+     *
+     * @return
+     */
+    private ResultHashTable buildTable(Record n) {
+	ResultHashTable h = new ResultHashTable(buildType, buildKey);
+
+	for (; n != null; n = n.next) {
+	    if (!hasNullKey(n.data, buildKey)) {
+		h.add(n.data);
+	    }
+	}
+
+	return h;
+    }
+
+    /**
+     * Adds the joined rows for one probe row.
+     *
+     *
+     * @param h
+     * @param data
+     *
+     * @throws SQLException
+     */
+    private void probe(ResultHashTable h,
+		       Object data[]) throws SQLException {
+	if (hasNullKey(data, probeKey)) {
+	    return;
+	}
+
+	// the probe key values at the positions of the build key columns
+	Object key[] = new Object[buildType.length];
+
+	for (int j = 0; j < probeKey.length; j++) {
+	    key[buildKey[j]] = data[probeKey[j]];
+	}
+
+	for (int i = h.find(key); i != -1; i = h.findNext(i)) {
+	    Object match[] = h.getRow(i);
+	    Object row[] = new Object[out.iType.length];
+	    Object left[] = buildIsLeft ? match
+					: data;
+	    Object right[] = buildIsLeft ? data
+					 : match;
+
+	    System.arraycopy(left, 0, row, 0, leftLen);
+	    System.arraycopy(right, 0, row, leftLen, row.length - leftLen);
+	    out.add(row);
+	}
+    }
+
+    /**
+     * Splits both inputs into partitions by the hash of the keys and
+     * joins each pair of partitions in memory.
+     *
+     *
+     * @param build
+     * @param probe
+     * @param partitions
+     *
+     * @throws IOException
+     * @throws SQLException
+     */
+    private void joinPartitioned(Result build, Result probe,
+				 int partitions)
+				 throws IOException, SQLException {
+	File buildFile[] = new File[partitions];
+	File probeFile[] = new File[partitions];
+	int  buildCount[] = new int[partitions];
+	int  probeCount[] = new int[partitions];
+
+	try {
+	    writePartitions(build, buildKey, buildFile, buildCount);
+	    writePartitions(probe, probeKey, probeFile, probeCount);
+
+	    for (int p = 0; p < partitions; p++) {
+		if (buildCount[p] == 0 || probeCount[p] == 0) {
+		    continue;
+		}
+
+		Record          rows = readPartition(buildFile[p],
+						     buildCount[p],
+						     buildType);
+		ResultHashTable h = buildTable(rows);
+		DataInputStream in = new DataInputStream(
+		    new BufferedInputStream(new FileInputStream(probeFile[p])));
+
+		try {
+		    for (int i = 0; i < probeCount[p]; i++) {
+			probe(h, readRow(in, probeType));
+		    }
+		} finally {
+		    in.close();
+		}
+	    }
+	} finally {
+	    for (int p = 0; p < partitions; p++) {
+		if (buildFile[p] != null) {
+		    buildFile[p].delete();
+		}
+
+		if (probeFile[p] != null) {
+		    probeFile[p].delete();
+		}
+	    }
+	}
+    }
+
+    /**
+     * Writes the rows of r with no null key to the partition of their key.
+     * The Record list is taken from r first, so that each row may be
+     * collected once it is written.
+     *
+     *
+     * @param r
+     * @param key
+     * @param file
+     * @param count
+     *
+     * @throws IOException
+     */
+    private static void writePartitions(Result r, int key[], File file[],
+					int count[]) throws IOException {
+	DataOutputStream out[] = new DataOutputStream[file.length];
+
+	try {
+	    for (int p = 0; p < file.length; p++) {
+		file[p] = File.createTempFile("hsqldb", ".join");
+		out[p] = new DataOutputStream(
+		    new BufferedOutputStream(new FileOutputStream(file[p])));
+	    }
+
+	    Record n = r.rRoot;
+
+	    r.rRoot = null;
+
+	    for (; n != null; n = n.next) {
+		if (hasNullKey(n.data, key)) {
+		    continue;
+		}
+
+		int h = 0;
+
+		for (int j = 0; j < key.length; j++) {
+		    h = 31 * h
+			+ ResultHashTable.hashValue(n.data[key[j]],
+						    r.iType[key[j]]);
+		}
+
+		int p = (h & 0x7fffffff) % file.length;
+
+		writeRow(out[p], n.data, r.iType);
+
+		count[p]++;
+	    }
+	} finally {
+	    for (int p = 0; p < file.length; p++) {
+		if (out[p] != null) {
+		    out[p].close();
+		}
+	    }
+	}
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @param f
+     * @param count
+     * @param type
+     *
+     * @return
+     *
+     * @throws IOException
+     * @throws SQLException
+     */
+    private static Record readPartition(File f, int count,
+					int type[])
+					throws IOException, SQLException {
+	DataInputStream in = new DataInputStream(
+	    new BufferedInputStream(new FileInputStream(f)));
+	Record          root = null;
+
+	try {
+	    for (int i = 0; i < count; i++) {
+		Record n = new Record();
+
+		n.data = readRow(in, type);
+		n.next = root;
+		root = n;
+	    }
+	} finally {
+	    in.close();
+	}
+
+	return root;
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @param data
+     * @param key
+     *
+     * @return
+     */
+    private static boolean hasNullKey(Object data[], int key[]) {
+	for (int j = 0; j < key.length; j++) {
+	    if (data[key[j]] == null) {
+		return true;
+	    }
+	}
+
+	return false;
+    }
+
+    /**
+     * Writes a row as a null flag per column followed by the non-null
+     * values in a fixed binary form for the common types and as their
+     * String form for all other types.
+     *
+     *
+     * @param out
+     * @param row
+     * @param type the column types
+     *
+     * @throws IOException
+     */
+    static void writeRow(DataOutputStream out, Object row[],
+			 int type[]) throws IOException {
+	for (int i = 0; i < type.length; i++) {
+	    Object o = row[i];
+
+	    out.writeBoolean(o == null);
+
+	    if (o == null) {
+		continue;
+	    }
+
+	    switch (type[i]) {
+
+	    case Types.TINYINT :
+	    case Types.SMALLINT :
+	    case Types.INTEGER :
+		out.writeInt(((Number) o).intValue());
+		break;
+
+	    case Types.BIGINT :
+		out.writeLong(((Number) o).longValue());
+		break;
+
+	    case Types.REAL :
+	    case Types.FLOAT :
+	    case Types.DOUBLE :
+		out.writeDouble(((Number) o).doubleValue());
+		break;
+
+	    case Types.BIT :
+		out.writeBoolean(((Boolean) o).booleanValue());
+		break;
+
+	    case Types.DATE :
+	    case Types.TIME :
+		out.writeLong(((java.util.Date) o).getTime());
+		break;
+
+	    case Types.TIMESTAMP :
+		out.writeLong(((Timestamp) o).getTime());
+		out.writeInt(((Timestamp) o).getNanos());
+		break;
+
+	    case Types.CHAR :
+	    case Types.VARCHAR :
+	    case Types.LONGVARCHAR :
+	    case Column.VARCHAR_IGNORECASE :
+		writeString(out, (String) o);
+		break;
+
+	    default :
+		writeString(out, Column.convertObject(o));
+		break;
+	    }
+	}
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @param in
+     * @param type the column types
+     *
+     * @return
+     *
+     * @throws IOException
+     * @throws SQLException
+     */
+    static Object[] readRow(DataInputStream in, int type[])
+    throws IOException, SQLException {
+	Object row[] = new Object[type.length];
+
+	for (int i = 0; i < type.length; i++) {
+	    if (in.readBoolean()) {
+		continue;
+	    }
+
+	    switch (type[i]) {
+
+	    case Types.TINYINT :
+	    case Types.SMALLINT :
+	    case Types.INTEGER :
+		row[i] = new Integer(in.readInt());
+		break;
+
+	    case Types.BIGINT :
+		row[i] = new Long(in.readLong());
+		break;
+
+	    case Types.REAL :
+	    case Types.FLOAT :
+	    case Types.DOUBLE :
+		row[i] = new Double(in.readDouble());
+		break;
+
+	    case Types.BIT :
+		row[i] = new Boolean(in.readBoolean());
+		break;
+
+	    case Types.DATE :
+		row[i] = new Date(in.readLong());
+		break;
+
+	    case Types.TIME :
+		row[i] = new Time(in.readLong());
+		break;
+
+	    case Types.TIMESTAMP : {
+		Timestamp t = new Timestamp(in.readLong());
+
+		t.setNanos(in.readInt());
+
+		row[i] = t;
+
+		break;
+	    }
+	    case Types.CHAR :
+	    case Types.VARCHAR :
+	    case Types.LONGVARCHAR :
+	    case Column.VARCHAR_IGNORECASE :
+		row[i] = readString(in);
+		break;
+
+	    default :
+		row[i] = Column.convertString(readString(in), type[i]);
+		break;
+	    }
+	}
+
+	return row;
+    }
+
+    /**
+     * Strings are written as a length and the chars, as writeUTF is
+     * limited to 64k bytes.
+     *
+     *
+     * @param out
+     * @param s
+     *
+     * @throws IOException
+     */
+    private static void writeString(DataOutputStream out,
+				    String s) throws IOException {
+	out.writeInt(s.length());
+	out.writeChars(s);
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @param in
+     *
+     * @return
+     *
+     * @throws IOException
+     */
+    private static String readString(DataInputStream in) throws IOException {
+	int  l = in.readInt();
+	char c[] = new char[l];
+
+	for (int i = 0; i < l; i++) {
+	    c[i] = in.readChar();
+	}
+
+	return new String(c);
+    }
+}
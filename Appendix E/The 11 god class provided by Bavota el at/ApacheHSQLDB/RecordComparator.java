@@ -0,0 +1,266 @@
+/*
+ * RecordComparator.java
+ *
+ * Copyright (c) 2001, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This package is based on HypersonicSQL, originally developed by Thomas Mueller.
+ *
+ */
+package org.hsqldb;
+
+import java.sql.*;
+
+/**
+ * Compares rows on a list of columns. <p>
+ *
+ * The column types are looked at once, when the comparator is made, and
+ * each column gets a comparison for its type. Rows are ordered as by
+ * Column.compare on each column in turn, with the direction of each
+ * column given by way[]; nulls are equal to each other and smaller than
+ * any value.
+ *
+ * @version 1.0.0.1
+ */
+class RecordComparator {
+    private int		column[];
+    private int		way[];
+    private ValueCompare value[];
+
+    /**
+     * Constructor declaration
+     *
+     *
+     * @param type the column types of the rows
+     * @param order the columns to compare, most significant first
+     * @param way 1 for ascending or -1 for descending, for each column
+     */
+    private RecordComparator(int type[], int order[], int way[]) {
+	column = order;
+	this.way = way;
+	value = new ValueCompare[order.length];
+
+	for (int j = 0; j < order.length; j++) {
+	    value[j] = newValueCompare(type[order[j]]);
+	}
+    }
+
+    /**
+     * Returns a comparator for the order columns of rows of the given
+     * types.
+     *
+     *
+     * @param type
+     * @param order
+     * @param way
+     *
+     * @return
+     */
+    static RecordComparator newComparator(int type[], int order[],
+					  int way[]) {
+	return new RecordComparator(type, order, way);
+    }
+
+    /**
+     * Returns a comparator for the order columns, all ascending.
+     *
+     *
+     * @param type
+     * @param order
+     *
+     * @return
+     */
+    static RecordComparator newComparator(int type[], int order[]) {
+	int way[] = new int[order.length];
+
+	for (int i = 0; i < way.length; i++) {
+	    way[i] = 1;
+	}
+
+	return new RecordComparator(type, order, way);
+    }
+
+    /**
+     * Returns a comparator for the first len columns, all ascending.
+     *
+     *
+     * @param type
+     * @param len
+     *
+     * @return
+     */
+    static RecordComparator newComparator(int type[], int len) {
+	return newComparator(type, ResultHashTable.allColumns(len));
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @param a
+     * @param b
+     *
+     * @return
+     *
+     * @throws SQLException
+     */
+    int compare(Object a[], Object b[]) throws SQLException {
+	for (int j = 0; j < column.length; j++) {
+	    Object x = a[column[j]];
+	    Object y = b[column[j]];
+	    int    i;
+
+	    if (x == null || y == null) {
+		i = x == y ? 0
+			   : x == null ? -1
+				       : 1;
+	    } else {
+		i = value[j].compare(x, y);
+	    }
+
+	    if (i != 0) {
+		return i * way[j];
+	    }
+	}
+
+	return 0;
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @param type
+     *
+     * @return
+     */
+    private static ValueCompare newValueCompare(int type) {
+	switch (type) {
+
+	case Types.TINYINT :
+	case Types.SMALLINT :
+	case Types.INTEGER :
+	    return new IntCompare();
+
+	case Types.BIGINT :
+	    return new LongCompare();
+
+	case Types.FLOAT :
+	case Types.DOUBLE :
+	    return new DoubleCompare();
+
+	case Types.CHAR :
+	case Types.VARCHAR :
+	case Types.LONGVARCHAR :
+	    return new StringCompare();
+
+	case Column.VARCHAR_IGNORECASE :
+	    return new IgnoreCaseCompare();
+
+	default :
+	    return new ObjectCompare(type);
+	}
+    }
+
+    /**
+     * Compares two non-null values of one column type.
+     */
+    private abstract static class ValueCompare {
+	abstract int compare(Object a, Object b) throws SQLException;
+    }
+
+    private static class IntCompare extends ValueCompare {
+	int compare(Object a, Object b) {
+	    int x = ((Number) a).intValue();
+	    int y = ((Number) b).intValue();
+
+	    return x > y ? 1
+			 : x < y ? -1
+				 : 0;
+	}
+    }
+
+    private static class LongCompare extends ValueCompare {
+	int compare(Object a, Object b) {
+	    long x = ((Number) a).longValue();
+	    long y = ((Number) b).longValue();
+
+	    return x > y ? 1
+			 : x < y ? -1
+				 : 0;
+	}
+    }
+
+    private static class DoubleCompare extends ValueCompare {
+	int compare(Object a, Object b) {
+	    double x = ((Number) a).doubleValue();
+	    double y = ((Number) b).doubleValue();
+
+	    return x > y ? 1
+			 : x < y ? -1
+				 : 0;
+	}
+    }
+
+    private static class StringCompare extends ValueCompare {
+	int compare(Object a, Object b) {
+	    int i = ((String) a).compareTo((String) b);
+
+	    return i > 0 ? 1
+			 : i < 0 ? -1
+				 : 0;
+	}
+    }
+
+    private static class IgnoreCaseCompare extends ValueCompare {
+	int compare(Object a, Object b) {
+	    int i = ((String) a).toUpperCase().compareTo(
+		((String) b).toUpperCase());
+
+	    return i > 0 ? 1
+			 : i < 0 ? -1
+				 : 0;
+	}
+    }
+
+    /**
+     * All other types are compared by Column.compare.
+     */
+    private static class ObjectCompare extends ValueCompare {
+	int type;
+
+	ObjectCompare(int type) {
+	    this.type = type;
+	}
+
+	int compare(Object a, Object b) throws SQLException {
+	    return Column.compare(a, b, type);
+	}
+    }
+}
@@ -0,0 +1,407 @@
+/* Copyright (c) 2001-2004, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL HSQL DEVELOPMENT GROUP, HSQLDB.ORG, 
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, 
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, 
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package org.hsqldb;
+
+import org.hsqldb.lib.HashMap;
+import org.hsqldb.lib.HsqlArrayList;
+
+/**
+ * Opt-in cache of SELECT results, shared by all sessions of a Database. <p>
+ *
+ * A Result is stored under the normalized text of its statement together
+ * with the change number of each table the statement reads. A DML
+ * statement on a table gives the table a new change number, so that
+ * cached Results that read the table are no longer returned, and drops
+ * them from the cache. Any change to the database structure, and any
+ * ROLLBACK, clears the cache. <p>
+ *
+ * The cache holds at most a given number of rows in total; the least
+ * recently used Results are evicted first. Cached Results are shared and
+ * must not be modified by the caller. <p>
+ *
+ * Statements that read TEMP tables must not be cached, as the same text
+ * reads different tables in different sessions. Nor may statements whose
+ * result depends on more than the rows they read, such as calls of NOW(),
+ * RAND(), CURRENT_USER, IDENTITY() or a user-defined ALIAS; put() refuses
+ * those that isDeterministic() can recognise, and the caller must not
+ * offer those calling an ALIAS. Access rights are not checked here; the
+ * caller checks them before using a cached Result.
+ *
+ * @version 1.7.2
+ */
+class ResultCache {
+
+    /** names of functions and values that isDeterministic rejects */
+    private static final String[] nonDeterministic = {
+        "NOW", "CURDATE", "CURTIME", "CURRENT_DATE", "CURRENT_TIME",
+        "CURRENT_TIMESTAMP", "SYSDATE", "TODAY", "RAND", "USER",
+        "CURRENT_USER", "IDENTITY", "NEXT"
+    };
+
+    private int     maxRows;
+    private int     rows;
+    private HashMap entries      = new HashMap();
+    private HashMap tableChanges = new HashMap();
+    private HashMap tableEntries = new HashMap();
+
+    /** most and least recently used entries */
+    private Entry head;
+    private Entry tail;
+
+    // metrics
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    ResultCache(int maxRows) {
+        this.maxRows = maxRows;
+    }
+
+    /**
+     * Returns the cached Result for the statement, or null if there is
+     * none or one of its tables has changed since it was stored.
+     */
+    synchronized Result get(String sql) {
+
+        Entry e = (Entry) entries.get(normalize(sql));
+
+        if (e == null) {
+            misses++;
+
+            return null;
+        }
+
+        for (int i = 0; i < e.tables.length; i++) {
+            if (getTableChange(e.tables[i]) != e.changes[i]) {
+                remove(e);
+
+                invalidations++;
+                misses++;
+
+                return null;
+            }
+        }
+
+        unlink(e);
+        linkFirst(e);
+
+        hits++;
+
+        return e.result;
+    }
+
+    /**
+     * Stores the Result of a statement that reads the given tables.
+     * Results larger than the whole cache are not stored.
+     */
+    synchronized void put(String sql, String[] tables, Result result) {
+
+        int size = result.getSize();
+
+        if (size > maxRows ||!isDeterministic(sql)) {
+            return;
+        }
+
+        String key = normalize(sql);
+        Entry  old = (Entry) entries.get(key);
+
+        if (old != null) {
+            remove(old);
+        }
+
+        Entry e = new Entry();
+
+        e.key     = key;
+        e.result  = result;
+        e.rows    = size;
+        e.tables  = tables;
+        e.changes = new long[tables.length];
+
+        for (int i = 0; i < tables.length; i++) {
+            e.changes[i] = getTableChange(tables[i]);
+
+            HsqlArrayList list = (HsqlArrayList) tableEntries.get(tables[i]);
+
+            if (list == null) {
+                list = new HsqlArrayList();
+
+                tableEntries.put(tables[i], list);
+            }
+
+            list.add(e);
+        }
+
+        entries.put(key, e);
+        linkFirst(e);
+
+        rows += size;
+
+        while (rows > maxRows) {
+            remove(tail);
+
+            evictions++;
+        }
+    }
+
+    /**
+     * Records a change to the table with the given change number and
+     * drops the Results that read the table.
+     */
+    synchronized void tableChanged(String table, long scn) {
+
+        tableChanges.put(table, new Long(scn));
+
+        HsqlArrayList list = (HsqlArrayList) tableEntries.remove(table);
+
+        if (list == null) {
+            return;
+        }
+
+        for (int i = 0; i < list.size(); i++) {
+            remove((Entry) list.get(i));
+
+            invalidations++;
+        }
+    }
+
+    /**
+     * Drops all Results, after a change to the database structure.
+     */
+    synchronized void clear() {
+
+        invalidations += entries.size();
+
+        entries.clear();
+        tableEntries.clear();
+
+        head = tail = null;
+        rows = 0;
+    }
+
+    synchronized long getHitCount() {
+        return hits;
+    }
+
+    synchronized long getMissCount() {
+        return misses;
+    }
+
+    synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    synchronized long getInvalidationCount() {
+        return invalidations;
+    }
+
+    synchronized int getRowCount() {
+        return rows;
+    }
+
+    private long getTableChange(String table) {
+
+        Long scn = (Long) tableChanges.get(table);
+
+        return scn == null ? 0
+                           : scn.longValue();
+    }
+
+    /**
+     * Removes an entry from the map, the LRU list and the lists of
+     * entries of its tables.
+     */
+    private void remove(Entry e) {
+
+        entries.remove(e.key);
+        unlink(e);
+
+        rows -= e.rows;
+
+        for (int i = 0; i < e.tables.length; i++) {
+            HsqlArrayList list = (HsqlArrayList) tableEntries.get(e.tables[i]);
+
+            if (list == null) {
+                continue;
+            }
+
+            for (int j = list.size() - 1; j >= 0; j--) {
+                if (list.get(j) == e) {
+                    list.remove(j);
+                }
+            }
+
+            if (list.size() == 0) {
+                tableEntries.remove(e.tables[i]);
+            }
+        }
+    }
+
+    private void linkFirst(Entry e) {
+
+        e.prev = null;
+        e.next = head;
+
+        if (head != null) {
+            head.prev = e;
+        }
+
+        head = e;
+
+        if (tail == null) {
+            tail = e;
+        }
+    }
+
+    private void unlink(Entry e) {
+
+        if (e.prev == null) {
+            head = e.next;
+        } else {
+            e.prev.next = e.next;
+        }
+
+        if (e.next == null) {
+            tail = e.prev;
+        } else {
+            e.next.prev = e.prev;
+        }
+
+        e.prev = e.next = null;
+    }
+
+    /**
+     * Returns false if the statement names a built-in function or value
+     * that may differ between two executions on the same rows, or calls a
+     * Java method by its quoted name. Identifiers are compared in upper
+     * case; string literals and quoted identifiers are skipped.
+     */
+    static boolean isDeterministic(String sql) {
+
+        int len = sql.length();
+        int i   = 0;
+
+        while (i < len) {
+            char c = sql.charAt(i);
+
+            if (c == '\'' || c == '"') {
+                i++;
+
+                while (i < len && sql.charAt(i) != c) {
+                    i++;
+                }
+
+                i++;
+
+                // a quoted name followed by ( is a Java method call
+                if (c == '"') {
+                    while (i < len
+                            && Character.isWhitespace(sql.charAt(i))) {
+                        i++;
+                    }
+
+                    if (i < len && sql.charAt(i) == '(') {
+                        return false;
+                    }
+                }
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+
+                while (i < len
+                        && Character.isJavaIdentifierPart(sql.charAt(i))) {
+                    i++;
+                }
+
+                String name = sql.substring(start, i).toUpperCase();
+
+                for (int j = 0; j < nonDeterministic.length; j++) {
+                    if (name.equals(nonDeterministic[j])) {
+                        return false;
+                    }
+                }
+            } else {
+                i++;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Collapses each run of white space outside quoted strings and
+     * identifiers to a single space, so that statements that differ only
+     * in layout share an entry.
+     */
+    static String normalize(String sql) {
+
+        StringBuffer sb    = new StringBuffer(sql.length());
+        char         quote = 0;
+        boolean      space = false;
+
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+
+            if (quote == 0 && Character.isWhitespace(c)) {
+                space = true;
+
+                continue;
+            }
+
+            if (space && sb.length() > 0) {
+                sb.append(' ');
+            }
+
+            space = false;
+
+            if (quote == 0 && (c == '\'' || c == '"')) {
+                quote = c;
+            } else if (c == quote) {
+                quote = 0;
+            }
+
+            sb.append(c);
+        }
+
+        return sb.toString();
+    }
+
+    private static class Entry {
+
+        String   key;
+        Result   result;
+        int      rows;
+        String[] tables;
+        long[]   changes;
+        Entry    prev;
+        Entry    next;
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * ResultHashTable.java
+ *
+ * Copyright (c) 2001, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This package is based on HypersonicSQL, originally developed by Thomas Mueller.
+ *
+ */
+package org.hsqldb;
+
+import java.sql.*;
+
+/**
+ * Hash table of rows keyed on a set of columns. <p>
+ *
+ * Two rows are the same key when a RecordComparator on the key columns
+ * finds them equal, so two nulls are equal, as they are for the sort
+ * based operations of Select. The hash of a value is computed by column type
+ * to agree with Column.compare, e.g. VARCHAR_IGNORECASE values are hashed
+ * in upper case.
+ *
+ * @version 1.0.0.1
+ */
+class ResultHashTable {
+    private int		     iType[];
+    private int		     column[];
+    private RecordComparator comparator;
+    private int		     bucket[];
+    private Object	     row[][];
+    private int		     hash[];
+    private int		     link[];
+    private int		     size;
+
+    /**
+     * Constructor declaration
+     *
+     *
+     * @param type the column types of the rows
+     * @param column the key columns
+     */
+    ResultHashTable(int type[], int column[]) {
+	iType = type;
+	this.column = column;
+	comparator = RecordComparator.newComparator(type, column);
+	bucket = new int[64];
+	row = new Object[48][];
+	hash = new int[48];
+	link = new int[48];
+
+	for (int i = 0; i < bucket.length; i++) {
+	    bucket[i] = -1;
+	}
+    }
+
+    /**
+     * Returns a key array for all columns of a Result.
+     *
+     *
+     * @param len
+     *
+     * @return
+     */
+    static int[] allColumns(int len) {
+	int c[] = new int[len];
+
+	for (int i = 0; i < len; i++) {
+	    c[i] = i;
+	}
+
+	return c;
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @return the number of rows in the table
+     */
+    int size() {
+	return size;
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @param i
+     *
+     * @return the row for an index returned by find or add
+     */
+    Object[] getRow(int i) {
+	return row[i];
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @param data
+     *
+     * @return the index of a row with the same key, or -1 if none
+     *
+     * @throws SQLException
+     */
+    int find(Object data[]) throws SQLException {
+	return find(data, hashRow(data));
+    }
+
+    /**
+     * Returns the next row after the row at index i with the same key, for
+     * tables that hold several rows per key.
+     *
+     *
+     * @param i an index returned by find or findNext
+     *
+     * @return the index of the next row with the same key, or -1 if none
+     *
+     * @throws SQLException
+     */
+    int findNext(int i) throws SQLException {
+	for (int j = link[i]; j != -1; j = link[j]) {
+	    if (hash[j] == hash[i] && comparator.compare(row[j], row[i]) == 0) {
+		return j;
+	    }
+	}
+
+	return -1;
+    }
+
+    /**
+     * Adds a row without checking for an existing row with the same key.
+     *
+     *
+     * @param data
+     *
+     * @return the index of the new row
+     */
+    int add(Object data[]) {
+	return add(data, hashRow(data));
+    }
+
+    /**
+     * Adds a row unless a row with the same key exists.
+     *
+     *
+     * @param data
+     *
+     * @return the index of the new row, or -1 if the key was found
+     *
+     * @throws SQLException
+     */
+    int addIfAbsent(Object data[]) throws SQLException {
+	int h = hashRow(data);
+
+	if (find(data, h) != -1) {
+	    return -1;
+	}
+
+	return add(data, h);
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @param data
+     * @param h
+     *
+     * @return
+     *
+     * @throws SQLException
+     */
+    private int find(Object data[], int h) throws SQLException {
+	for (int i = bucket[h & (bucket.length - 1)]; i != -1; i = link[i]) {
+	    if (hash[i] == h && comparator.compare(row[i], data) == 0) {
+		return i;
+	    }
+	}
+
+	return -1;
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @param data
+     * @param h
+     *
+     * @return
+     */
+    private int add(Object data[], int h) {
+	if (size == row.length) {
+	    grow();
+	}
+
+	int b = h & (bucket.length - 1);
+
+	row[size] = data;
+	hash[size] = h;
+	link[size] = bucket[b];
+	bucket[b] = size;
+
+	return size++;
+    }
+
+    /**
+     * Doubles the entries and the buckets, keeping the load at 3/4.
+     *
+     */
+    private void grow() {
+	int    newsize = row.length * 2;
+	Object r[][] = new Object[newsize][];
+	int    h[] = new int[newsize];
+
+	System.arraycopy(row, 0, r, 0, size);
+	System.arraycopy(hash, 0, h, 0, size);
+
+	row = r;
+	hash = h;
+	link = new int[newsize];
+	bucket = new int[bucket.length * 2];
+
+	for (int i = 0; i < bucket.length; i++) {
+	    bucket[i] = -1;
+	}
+
+	for (int i = 0; i < size; i++) {
+	    int b = hash[i] & (bucket.length - 1);
+
+	    link[i] = bucket[b];
+	    bucket[b] = i;
+	}
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @param data
+     *
+     * @return
+     */
+    private int hashRow(Object data[]) {
+	int h = 0;
+
+	for (int j = 0; j < column.length; j++) {
+	    int c = column[j];
+
+	    h = 31 * h + hashValue(data[c], iType[c]);
+	}
+
+	// spread the high bits, as the bucket is taken from the low bits
+	return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns a hash code that is the same for any two values that
+     * Column.compare finds equal.
+     *
+     *
+     * @param o
+     * @param type
+     *
+     * @return
+     */
+    static int hashValue(Object o, int type) {
+	if (o == null) {
+	    return 0;
+	}
+
+	switch (type) {
+
+	case Column.VARCHAR_IGNORECASE :
+	    return ((String) o).toUpperCase().hashCode();
+
+	case Types.REAL :
+	case Types.FLOAT :
+	case Types.DOUBLE :
+	case Types.NUMERIC :
+	case Types.DECIMAL : {
+
+	    // 1.0 and 1.00 are equal DECIMAL values, so are 0.0 and -0.0
+	    double d = ((Number) o).doubleValue();
+
+	    if (d == 0) {
+		return 0;
+	    }
+
+	    long l = Double.doubleToLongBits(d);
+
+	    return (int) (l ^ (l >>> 32));
+	}
+	case Types.TINYINT :
+	case Types.SMALLINT :
+	case Types.INTEGER :
+	case Types.BIGINT :
+	case Types.BIT :
+	case Types.CHAR :
+	case Types.VARCHAR :
+	case Types.LONGVARCHAR :
+	case Types.DATE :
+	case Types.TIME :
+	case Types.TIMESTAMP :
+	    return o.hashCode();
+
+	default :
+	    return Column.convertObject(o).hashCode();
+	}
+    }
+}
@@ -61,6 +61,15 @@ class Select {
     int limitCount = -1;
 // fredt@users.sourceforge.net end changes from 1.50
 
+    // groups that groupResult keeps in a hash table before it sorts the
+    // rows in place instead, 0 means no limit
+    int maxMemoryRows = 0;
+
+    // rows from which sortResultAll sorts on several threads, 0 means
+    // never
+    static final int PARALLEL_SORT_ROWS = 100000;
+    int parallelSortRows = PARALLEL_SORT_ROWS;
+
     /**
      * Method declaration
      *
@@ -200,71 +209,135 @@ class Select {
 	x.add(row);
     }
 
-   
-    
-   
-
-   
 
     /**
-     * Method declaration
+     * Aggregates the rows of r by the group columns, which follow the
+     * iResultLen result columns. Uses a HashAggregate unless the number of
+     * groups exceeds maxMemoryRows, in which case r is sorted on the group
+     * columns and aggregated one group at a time. Without the fallback
+     * the groups are returned in the order they were first seen. Without
+     * group columns an empty r gives one row, as for count(*) on an
+     * empty table.
      *
      *
-     * @param a
-     * @param b
      * @param r
-     * @param order
-     * @param way
+     * @param len
      *
      * @return
      *
      * @throws SQLException
      */
-    private static int compareRecord(Object a[], Object b[], Result r,
-				     int order[],
-				     int way[]) throws SQLException {
-	int i = Column.compare(a[order[0]], b[order[0]], r.iType[order[0]]);
+    private Result groupResult(Result r, int len) throws SQLException {
+	int exprType[] = new int[len];
+	int dataType[] = new int[len];
+	int group[] = new int[iGroupLen];
 
-	if (i == 0) {
-	    for (int j = 1; j < order.length; j++) {
-		i = Column.compare(a[order[j]], b[order[j]],
-				   r.iType[order[j]]);
+	for (int i = 0; i < len; i++) {
+	    exprType[i] = eColumn[i].getType();
+	    dataType[i] = eColumn[i].getDataType();
+	}
 
-		if (i != 0) {
-		    return i * way[j];
-		}
+	for (int i = 0; i < iGroupLen; i++) {
+	    group[i] = iResultLen + i;
+	}
+
+	HashAggregate agg = new HashAggregate(exprType, dataType, group);
+
+	for (Record n = r.rRoot; n != null; n = n.next) {
+	    agg.add(n.data);
+
+	    if (maxMemoryRows > 0 && agg.size() > maxMemoryRows) {
+		return groupResultSorted(r, len, group);
 	    }
 	}
 
-	return i * way[0];
+	Result x = newAggregateResult(r, len);
+
+	for (int g = 0; g < agg.size(); g++) {
+	    addAggregateRow(x, agg.getRow(g), len, agg.getCount(g));
+	}
+
+	// without GROUP BY an empty input still gives one row, COUNT 0
+	if (iGroupLen == 0 && agg.size() == 0) {
+	    addAggregateRow(x, new Object[len], len, 0);
+	}
+
+	return x;
     }
 
     /**
-     * Method declaration
+     * Aggregates the rows of r after sorting them on the group columns.
      *
      *
-     * @param a
-     * @param b
      * @param r
      * @param len
+     * @param group
      *
      * @return
      *
      * @throws SQLException
      */
-    private static int compareRecord(Object a[], Object b[], Result r,
-				     int len) throws SQLException {
-	for (int j = 0; j < len; j++) {
-	    int i = Column.compare(a[j], b[j], r.iType[j]);
+    private Result groupResultSorted(Result r, int len,
+				     int group[]) throws SQLException {
+	int way[] = new int[iGroupLen];
+
+	for (int i = 0; i < iGroupLen; i++) {
+	    way[i] = 1;
+	}
+
+	r = sortResultAll(r, group, way);
+
+	RecordComparator c = RecordComparator.newComparator(r.iType, group,
+	    way);
+	Result		 x = newAggregateResult(r, len);
+	Record		 n = r.rRoot;
 
-	    if (i != 0) {
-		return i;
+	while (n != null) {
+	    Object  row[] = new Object[len];
+	    int     count = 0;
+	    boolean newgroup = false;
+
+	    while (n != null &&!newgroup) {
+		count++;
+
+		updateAggregateRow(row, n.data, len);
+
+		newgroup = n.next == null || c.compare(n.data, n.next.data) != 0;
+		n = n.next;
 	    }
+
+	    addAggregateRow(x, row, len, count);
+	}
+
+	return x;
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @param r
+     * @param len
+     *
+     * @return
+     */
+    private static Result newAggregateResult(Result r, int len) {
+	Result x = new Result(len);
+
+	for (int i = 0; i < len; i++) {
+	    x.iType[i] = r.iType[i];
 	}
 
-	return 0;
+	return x;
     }
 
+   
+    
+   
+
+   
+
+
 
 
 
@@ -291,6 +364,91 @@ class Select {
   }
 
 
+    /**
+     * Returns true if the rows can be produced one at a time, which is
+     * the case when no row depends on later rows: there is no aggregate,
+     * GROUP BY, ORDER BY, DISTINCT, UNION or SELECT INTO.
+     *
+     *
+     * @return
+     */
+    boolean isPipelined() {
+	if (bDistinct || iGroupLen > 0 || iOrderLen > 0 || sUnion != null
+		|| sIntoTable != null) {
+	    return false;
+	}
+
+	for (int i = 0; i < iResultLen; i++) {
+	    if (eColumn[i].isAggregate()) {
+		return false;
+	    }
+	}
+
+	return true;
+    }
+
+    /**
+     * Returns an iterator over the rows, or null if the Select is not
+     * pipelined. The iterator is opened.
+     *
+     *
+     * @param maxrows
+     *
+     * @return
+     */
+    SelectIterator getIterator(int maxrows) {
+	if (!isPipelined()) {
+	    return null;
+	}
+
+	SelectIterator it = new SelectIterator(this, maxrows);
+
+	it.open();
+
+	return it;
+    }
+
+    /**
+     * Builds the Result of a pipelined Select from its iterator, so that
+     * with a LIMIT the scan stops after the last row that is returned.
+     *
+     *
+     * @param maxrows
+     *
+     * @return
+     *
+     * @throws SQLException
+     */
+    Result getPipelinedResult(int maxrows) throws SQLException {
+	SelectIterator it = getIterator(maxrows);
+
+	if (it == null) {
+	    return getResult(maxrows);
+	}
+
+	Result r = new Result(iResultLen);
+
+	for (int i = 0; i < iResultLen; i++) {
+	    Expression e = eColumn[i];
+
+	    r.iType[i] = e.getDataType();
+	    r.sLabel[i] = e.getAlias();
+	    r.sTable[i] = e.getTableName();
+	    r.sName[i] = e.getColumnName();
+	}
+
+	try {
+	    for (Object row[] = it.next(); row != null; row = it.next()) {
+		r.add(row);
+	    }
+	} finally {
+	    it.close();
+	}
+
+	return r;
+    }
+
+
 /**
      * Method declaration
      *
@@ -304,15 +462,16 @@ class Select {
      */
     private static Result removeSecond(Result r,
 				       Result minus) throws SQLException {
-	int     len = r.getColumnCount();
-	Record  n = r.rRoot;
-	Record  last = r.rRoot;
-	boolean rootr = true;    // checking rootrecord
-	Record  n2 = minus.rRoot;
-	int     i = 0;
+	RecordComparator c = RecordComparator.newComparator(r.iType,
+	    r.getColumnCount());
+	Record		 n = r.rRoot;
+	Record		 last = r.rRoot;
+	boolean		 rootr = true;	  // checking rootrecord
+	Record		 n2 = minus.rRoot;
+	int		 i = 0;
 
 	while (n != null && n2 != null) {
-	    i = compareRecord(n.data, n2.data, r, len);
+	    i = c.compare(n.data, n2.data);
 
 	    if (i == 0) {
 		if (rootr) {
@@ -335,8 +494,9 @@ class Select {
     }
 
 
- /**
-     * Method declaration
+    /**
+     * Sorts r on all columns and removes the duplicate rows. The result
+     * stays sorted, as removeSecond and removeDifferent require.
      *
      *
      * @param r
@@ -357,7 +517,9 @@ class Select {
 
 	r = sortResult(r, order, way);
 
-	Record n = r.rRoot;
+	RecordComparator c = RecordComparator.newComparator(r.iType, order,
+	    way);
+	Record		 n = r.rRoot;
 
 	while (n != null) {
 	    Record next = n.next;
@@ -366,7 +528,7 @@ class Select {
 		break;
 	    }
 
-	    if (compareRecord(n.data, next.data, r, len) == 0) {
+	    if (c.compare(n.data, next.data) == 0) {
 		n.next = next.next;
 	    } else {
 		n = n.next;
@@ -377,6 +539,45 @@ class Select {
     }
 
 
+    /**
+     * Removes the duplicate rows of r in one pass over a hash table,
+     * keeping the first row of each set of duplicates in its place. Falls
+     * back to the sorting removeDuplicates when the hash table grows
+     * beyond maxrows rows.
+     *
+     *
+     * @param r
+     * @param maxrows rows held in the hash table, 0 means no limit
+     *
+     * @return
+     *
+     * @throws SQLException
+     */
+    private static Result removeDuplicatesHashed(Result r,
+						 int maxrows) throws SQLException {
+	int             len = r.getColumnCount();
+	ResultHashTable h = new ResultHashTable(r.iType,
+						ResultHashTable.allColumns(len));
+	Record          n = r.rRoot;
+	Record          last = null;
+
+	while (n != null) {
+	    if (h.addIfAbsent(n.data) == -1) {
+		last.next = n.next;
+	    } else {
+		if (maxrows > 0 && h.size() > maxrows) {
+		    return removeDuplicates(r);
+		}
+
+		last = n;
+	    }
+
+	    n = n.next;
+	}
+
+	return r;
+    }
+
  /**
      * Method declaration
      *
@@ -390,15 +591,16 @@ class Select {
      */
     private static Result removeDifferent(Result r,
 					  Result r2) throws SQLException {
-	int     len = r.getColumnCount();
-	Record  n = r.rRoot;
-	Record  last = r.rRoot;
-	boolean rootr = true;    // checking rootrecord
-	Record  n2 = r2.rRoot;
-	int     i = 0;
+	RecordComparator c = RecordComparator.newComparator(r.iType,
+	    r.getColumnCount());
+	Record		 n = r.rRoot;
+	Record		 last = r.rRoot;
+	boolean		 rootr = true;	  // checking rootrecord
+	Record		 n2 = r2.rRoot;
+	int		 i = 0;
 
 	while (n != null && n2 != null) {
-	    i = compareRecord(n.data, n2.data, r, len);
+	    i = c.compare(n.data, n2.data);
 
 	    if (i == 0) {	      // same rows
 		if (rootr) {
@@ -427,6 +629,135 @@ class Select {
 	return r;
     }
 
+    /**
+     * EXCEPT: returns the distinct rows of r that are not in minus. Uses
+     * hash tables unless the smaller input has more than maxrows rows, in
+     * which case both inputs are sorted and merged by removeSecond.
+     *
+     *
+     * @param r
+     * @param minus
+     * @param maxrows rows held in a hash table, 0 means no limit
+     *
+     * @return
+     *
+     * @throws SQLException
+     */
+    private static Result exceptResult(Result r, Result minus,
+				       int maxrows) throws SQLException {
+	if (maxrows > 0 && Math.min(r.getSize(), minus.getSize()) > maxrows) {
+	    r = removeDuplicates(r);
+	    minus = removeDuplicates(minus);
+
+	    return removeSecond(r, minus);
+	}
+
+	r = removeDuplicatesHashed(r, maxrows);
+
+	return removeHashed(r, minus, false);
+    }
+
+    /**
+     * INTERSECT: returns the distinct rows of r that are also in r2. Uses
+     * hash tables unless the smaller input has more than maxrows rows, in
+     * which case both inputs are sorted and merged by removeDifferent.
+     *
+     *
+     * @param r
+     * @param r2
+     * @param maxrows rows held in a hash table, 0 means no limit
+     *
+     * @return
+     *
+     * @throws SQLException
+     */
+    private static Result intersectResult(Result r, Result r2,
+					  int maxrows) throws SQLException {
+	if (maxrows > 0 && Math.min(r.getSize(), r2.getSize()) > maxrows) {
+	    r = removeDuplicates(r);
+	    r2 = removeDuplicates(r2);
+
+	    return removeDifferent(r, r2);
+	}
+
+	r = removeDuplicatesHashed(r, maxrows);
+
+	return removeHashed(r, r2, true);
+    }
+
+    /**
+     * Keeps the rows of r that are in r2 if keep is true, or those that
+     * are not in r2 if keep is false. Neither Result needs to be sorted
+     * and the order of r is kept. The hash table is built on the smaller
+     * input and probed with the larger one. r must have no duplicates.
+     *
+     *
+     * @param r
+     * @param r2
+     * @param keep
+     *
+     * @return
+     *
+     * @throws SQLException
+     */
+    private static Result removeHashed(Result r, Result r2,
+				       boolean keep) throws SQLException {
+	int             len = r.getColumnCount();
+	int             size = r.getSize();
+	ResultHashTable h = new ResultHashTable(r.iType,
+						ResultHashTable.allColumns(len));
+	boolean         found[] = null;
+	Record          n;
+
+	if (r2.getSize() <= size) {
+	    for (n = r2.rRoot; n != null; n = n.next) {
+		h.add(n.data);
+	    }
+	} else {
+
+	    // the rows of r get the indexes 0 .. size - 1 in list order
+	    found = new boolean[size];
+
+	    for (n = r.rRoot; n != null; n = n.next) {
+		h.add(n.data);
+	    }
+
+	    for (n = r2.rRoot; n != null; n = n.next) {
+		int i = h.find(n.data);
+
+		if (i != -1) {
+		    found[i] = true;
+		}
+	    }
+	}
+
+	Record last = null;
+	int    i = 0;
+
+	for (n = r.rRoot; n != null; n = n.next, i++) {
+	    boolean in = found == null ? h.find(n.data) != -1
+				       : found[i];
+
+	    if (in == keep) {
+		if (last == null) {
+		    r.rRoot = n;
+		} else {
+		    last.next = n;
+		}
+
+		last = n;
+	    }
+	}
+
+	if (last == null) {
+	    r.rRoot = null;
+	} else {
+	    last.next = null;
+	}
+
+	return r;
+    }
+
      /*
      * @param r
      * @param order
@@ -436,17 +767,19 @@ class Select {
      *
      * @throws SQLException
      */
-    private static Result sortResult(Result r, int order[],
-				     int way[]) throws SQLException {
+    static Result sortResult(Result r, int order[],
+			     int way[]) throws SQLException {
 	if (r.rRoot == null || r.rRoot.next == null) {
 	    return r;
 	}
 
-	Record source0, source1;
-	Record target[] = new Record[2];
-	Record targetlast[] = new Record[2];
-	int    dest = 0;
-	Record n = r.rRoot;
+	RecordComparator c = RecordComparator.newComparator(r.iType, order,
+	    way);
+	Record		 source0, source1;
+	Record		 target[] = new Record[2];
+	Record		 targetlast[] = new Record[2];
+	int		 dest = 0;
+	Record		 n = r.rRoot;
 
 	while (n != null) {
 	    Record next = n.next;
@@ -478,8 +811,7 @@ class Select {
 			n = source0;
 			source0 = source0.next;
 			n0--;
-		    } else if (compareRecord(source0.data, source1.data, r, order, way)
-			       > 0) {
+		    } else if (c.compare(source0.data, source1.data) > 0) {
 			n = source1;
 			source1 = source1.next;
 			n1--;
@@ -506,6 +838,376 @@ class Select {
 	return r;
     }
 
+    /**
+     * Sorts r for ORDER BY. With a LIMIT only the first
+     * limitStart + limitCount rows are kept, using sortTopResult.
+     * trimResult is still applied to the result afterwards.
+     *
+     *
+     * @param r
+     * @param order
+     * @param way
+     *
+     * @return
+     *
+     * @throws SQLException
+     */
+    private Result sortResultLimited(Result r, int order[],
+				     int way[]) throws SQLException {
+	int count = limitStart + limitCount;
+
+	// the heap would not save anything if all rows are kept
+	if (limitCount > 0 && count < r.getSize()) {
+	    return sortTopResult(r, order, way, count);
+	}
+
+	return sortResultAll(r, order, way);
+    }
+
+    /**
+     * Sorts all rows of r, on several threads from parallelSortRows rows.
+     *
+     *
+     * @param r
+     * @param order
+     * @param way
+     *
+     * @return
+     *
+     * @throws SQLException
+     */
+    private Result sortResultAll(Result r, int order[],
+				 int way[]) throws SQLException {
+	int size = r.getSize();
+
+	// getSize is not lowered when Records are unlinked, so it is only
+	// used as an estimate here
+	if (parallelSortRows > 0 && size >= parallelSortRows) {
+	    return sortResultParallel(r, order, way);
+	}
+
+	return sortResult(r, order, way);
+    }
+
+    /**
+     * Cuts the Record list of r into one chunk per processor, sorts the
+     * chunks on separate threads with sortResult and merges them. Rows
+     * from earlier chunks win ties, so the sort stays stable. The Records
+     * are counted first, as Result.getSize() is not kept up to date by the
+     * methods that unlink Records.
+     *
+     *
+     * @param r
+     * @param order
+     * @param way
+     *
+     * @return
+     *
+     * @throws SQLException
+     */
+    private static Result sortResultParallel(Result r, int order[],
+					     int way[]) throws SQLException {
+	int size = 0;
+
+	for (Record n = r.rRoot; n != null; n = n.next) {
+	    size++;
+	}
+
+	int threads = Math.min(Runtime.getRuntime().availableProcessors(),
+			       size / 2);
+
+	if (threads < 2) {
+	    return sortResult(r, order, way);
+	}
+
+	SortThread part[] = new SortThread[threads];
+	int        len = r.getColumnCount();
+	Record     n = r.rRoot;
+
+	for (int i = 0; i < threads; i++) {
+	    Result chunk = new Result(len);
+	    int    rows = size / threads + (i < size % threads ? 1 : 0);
+
+	    chunk.iType = r.iType;
+	    chunk.rRoot = n;
+
+	    for (int j = 1; j < rows; j++) {
+		n = n.next;
+	    }
+
+	    Record next = n.next;
+
+	    n.next = null;
+	    n = next;
+	    part[i] = new SortThread(chunk, order, way);
+	}
+
+	for (int i = 1; i < threads; i++) {
+	    part[i].start();
+	}
+
+	// this thread sorts the first chunk
+	part[0].run();
+
+	for (int i = 1; i < threads; i++) {
+	    try {
+		part[i].join();
+	    } catch (InterruptedException e) {
+		throw Trace.error(Trace.GENERAL_ERROR, e.getMessage());
+	    }
+	}
+
+	// a failed chunk may have lost Records, so none are merged
+	for (int i = 0; i < threads; i++) {
+	    Throwable t = part[i].error;
+
+	    if (t == null) {
+		continue;
+	    }
+
+	    if (t instanceof SQLException) {
+		throw (SQLException) t;
+	    }
+
+	    if (t instanceof RuntimeException) {
+		throw (RuntimeException) t;
+	    }
+
+	    if (t instanceof Error) {
+		throw (Error) t;
+	    }
+
+	    throw Trace.error(Trace.GENERAL_ERROR, t.toString());
+	}
+
+	RecordComparator c = RecordComparator.newComparator(r.iType, order,
+	    way);
+
+	// merge neighbouring chunks until one is left
+	for (int step = 1; step < threads; step <<= 1) {
+	    for (int i = 0; i + step < threads; i += step << 1) {
+		part[i].r.rRoot = mergeRecords(part[i].r.rRoot,
+					       part[i + step].r.rRoot, c);
+	    }
+	}
+
+	r.rRoot = part[0].r.rRoot;
+
+	return r;
+    }
+
+    /**
+     * Merges two sorted Record lists; rows of a win ties.
+     *
+     *
+     * @param a
+     * @param b
+     * @param c
+     *
+     * @return
+     *
+     * @throws SQLException
+     */
+    private static Record mergeRecords(Record a, Record b,
+				       RecordComparator c)
+				       throws SQLException {
+	Record root = null;
+	Record last = null;
+
+	while (a != null || b != null) {
+	    Record n;
+
+	    if (b == null
+		    || (a != null
+			&& c.compare(a.data, b.data) <= 0)) {
+		n = a;
+		a = a.next;
+	    } else {
+		n = b;
+		b = b.next;
+	    }
+
+	    if (last == null) {
+		root = n;
+	    } else {
+		last.next = n;
+	    }
+
+	    last = n;
+	}
+
+	return root;
+    }
+
+    /**
+     * Sorts one chunk of a Result for sortResultParallel.
+     */
+    private static class SortThread extends Thread {
+	Result	     r;
+	int	     order[];
+	int	     way[];
+	Throwable    error;
+
+	SortThread(Result r, int order[], int way[]) {
+	    this.r = r;
+	    this.order = order;
+	    this.way = way;
+	}
+
+	public void run() {
+	    try {
+		sortResult(r, order, way);
+	    } catch (Throwable e) {
+		error = e;
+	    }
+	}
+    }
+
+    /**
+     * Returns the first count rows of r in sort order, in one pass over
+     * r with a bounded heap that holds the count smallest rows seen so far
+     * and the largest of them at the top. Ties are broken by the position
+     * in r, so the rows are the same as with sortResult and trimResult.
+     *
+     *
+     * @param r
+     * @param order
+     * @param way
+     * @param count
+     *
+     * @return
+     *
+     * @throws SQLException
+     */
+    private static Result sortTopResult(Result r, int order[], int way[],
+					int count) throws SQLException {
+	RecordComparator cmp = RecordComparator.newComparator(r.iType, order,
+	    way);
+	Record		 heap[] = new Record[count];
+	int		 pos[] = new int[count];
+	int		 size = 0;
+	int		 i = 0;
+
+	for (Record n = r.rRoot; n != null; n = n.next, i++) {
+	    if (size < count) {
+		heap[size] = n;
+		pos[size] = i;
+
+		int c = size++;
+
+		while (c > 0) {
+		    int parent = (c - 1) >> 1;
+
+		    if (compareTop(heap, pos, parent, c, cmp) >= 0) {
+			break;
+		    }
+
+		    swapTop(heap, pos, parent, c);
+
+		    c = parent;
+		}
+	    } else if (cmp.compare(n.data, heap[0].data) < 0) {
+		heap[0] = n;
+		pos[0] = i;
+
+		siftTop(heap, pos, 0, size, cmp);
+	    }
+	}
+
+	// heapsort the kept rows in place, then link them in that order
+	for (int last = size - 1; last > 0; last--) {
+	    swapTop(heap, pos, 0, last);
+	    siftTop(heap, pos, 0, last, cmp);
+	}
+
+	for (int j = 0; j < size; j++) {
+	    heap[j].next = j + 1 < size ? heap[j + 1]
+					: null;
+	}
+
+	r.rRoot = size == 0 ? null
+			    : heap[0];
+
+	return r;
+    }
+
+    /**
+     * Moves the row at index c down the max-heap of the given size.
+     *
+     *
+     * @param heap
+     * @param pos
+     * @param c
+     * @param size
+     * @param cmp
+     *
+     * @throws SQLException
+     */
+    private static void siftTop(Record heap[], int pos[], int c, int size,
+				RecordComparator cmp) throws SQLException {
+	while (true) {
+	    int child = 2 * c + 1;
+
+	    if (child >= size) {
+		return;
+	    }
+
+	    if (child + 1 < size
+		    && compareTop(heap, pos, child + 1, child, cmp) > 0) {
+		child++;
+	    }
+
+	    if (compareTop(heap, pos, c, child, cmp) >= 0) {
+		return;
+	    }
+
+	    swapTop(heap, pos, c, child);
+
+	    c = child;
+	}
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @param heap
+     * @param pos
+     * @param a
+     * @param b
+     * @param cmp
+     *
+     * @return
+     *
+     * @throws SQLException
+     */
+    private static int compareTop(Record heap[], int pos[], int a, int b,
+				  RecordComparator cmp) throws SQLException {
+	int i = cmp.compare(heap[a].data, heap[b].data);
+
+	return i != 0 ? i
+		      : pos[a] - pos[b];
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @param heap
+     * @param pos
+     * @param a
+     * @param b
+     */
+    private static void swapTop(Record heap[], int pos[], int a, int b) {
+	Record n = heap[a];
+	int    p = pos[a];
+
+	heap[a] = heap[b];
+	pos[a] = pos[b];
+	heap[b] = n;
+	pos[b] = p;
+    }
+
 
  /**
      * Method declaration
@@ -538,6 +1240,76 @@ class Select {
 	n.next = null;
     }
 
+/**
+     * Method declaration
+     *
+     *
+     * @param r
+     * @param order
+     * @param way
+     *
+     * @return
+     *
+     * @throws SQLException
+     */
+    static ColumnarResult sortResult(ColumnarResult r, int order[],
+				     int way[]) throws SQLException {
+	r.sort(order, way);
+
+	return r;
+    }
+
+    /**
+     * Returns the result in columnar form. The rows of a pipelined Select
+     * are added to the columns as the iterator produces them, so no boxed
+     * Result is built. For all other Selects the Result of getResult is
+     * copied.
+     *
+     *
+     * @param maxrows
+     *
+     * @return
+     *
+     * @throws SQLException
+     */
+    ColumnarResult getColumnarResult(int maxrows) throws SQLException {
+	SelectIterator it = getIterator(maxrows);
+
+	if (it == null) {
+	    return ColumnarResult.fromResult(getResult(maxrows));
+	}
+
+	int type[] = new int[iResultLen];
+
+	for (int i = 0; i < iResultLen; i++) {
+	    type[i] = eColumn[i].getDataType();
+	}
+
+	ColumnarResult c = new ColumnarResult(type);
+
+	c.sLabel = new String[iResultLen];
+	c.sTable = new String[iResultLen];
+	c.sName = new String[iResultLen];
+
+	for (int i = 0; i < iResultLen; i++) {
+	    Expression e = eColumn[i];
+
+	    c.sLabel[i] = e.getAlias();
+	    c.sTable[i] = e.getTableName();
+	    c.sName[i] = e.getColumnName();
+	}
+
+	try {
+	    for (Object row[] = it.next(); row != null; row = it.next()) {
+		c.add(row);
+	    }
+	} finally {
+	    it.close();
+	}
+
+	return c;
+    }
+
 /**
      * Method declaration
      *
@@ -0,0 +1,168 @@
+/*
+ * SelectIterator.java
+ *
+ * Copyright (c) 2001, The HSQL Development Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ *
+ * Neither the name of the HSQL Development Group nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * This package is based on HypersonicSQL, originally developed by Thomas Mueller.
+ *
+ */
+package org.hsqldb;
+
+import java.sql.*;
+
+/**
+ * Produces the rows of a simple Select one at a time. <p>
+ *
+ * The join of the TableFilters is walked as in Select.getResult, but the
+ * walk stops after each row that satisfies the condition and resumes on
+ * the next call to next(). Rows before limitStart are skipped, and no more
+ * rows are read once limitCount or maxrows rows have been returned. <p>
+ *
+ * Only Selects for which Select.isPipelined() is true can be iterated;
+ * for all others each row depends on rows that come later.
+ *
+ * @version 1.0.0.1
+ */
+class SelectIterator {
+    private Select  select;
+    private int     maxrows;
+    private int     skip;
+    private int     remaining;
+    private boolean first[];
+    private int     level;
+    private boolean isOpen;
+
+    /**
+     * Constructor declaration
+     *
+     *
+     * @param select
+     * @param maxrows 0 means no limit
+     */
+    SelectIterator(Select select, int maxrows) {
+	this.select = select;
+	this.maxrows = maxrows;
+    }
+
+    /**
+     * Positions the iterator before the first row.
+     *
+     */
+    void open() {
+	int limit = select.limitCount > 0 ? select.limitCount
+					  : -1;
+
+	if (maxrows > 0 && (limit == -1 || maxrows < limit)) {
+	    limit = maxrows;
+	}
+
+	skip = select.limitStart;
+	remaining = limit;
+	first = new boolean[select.tFilter.length];
+	level = 0;
+	isOpen = true;
+    }
+
+    /**
+     * Method declaration
+     *
+     *
+     * @return the next row, or null after the last row
+     *
+     * @throws SQLException
+     */
+    Object[] next() throws SQLException {
+	if (!isOpen || remaining == 0) {
+	    return null;
+	}
+
+	TableFilter filter[] = select.tFilter;
+	Expression  condition = select.eCondition;
+
+	while (level >= 0) {
+	    TableFilter t = filter[level];
+	    boolean     found;
+
+	    if (!first[level]) {
+		found = t.findFirst();
+	    } else {
+		found = t.next();
+	    }
+
+	    first[level] = found;
+
+	    if (!found) {
+		level--;
+
+		continue;
+	    }
+
+	    if (level < filter.length - 1) {
+		level++;
+
+		continue;
+	    }
+
+	    if (condition == null || condition.test()) {
+		if (skip > 0) {
+		    skip--;
+
+		    continue;
+		}
+
+		int    len = select.iResultLen;
+		Object row[] = new Object[len];
+
+		for (int i = 0; i < len; i++) {
+		    row[i] = select.eColumn[i].getValue();
+		}
+
+		if (remaining > 0) {
+		    remaining--;
+		}
+
+		return row;
+	    }
+	}
+
+	close();
+
+	return null;
+    }
+
+    /**
+     * Releases the iterator; next() returns null afterwards.
+     *
+     */
+    void close() {
+	isOpen = false;
+	first = null;
+    }
+}